@@ -20,6 +20,9 @@ dependencies {
     mappings("net.fabricmc:yarn:${project.property("yarn_mappings")}:v2")
     modImplementation("net.fabricmc:fabric-loader:${project.property("loader_version")}")
     modImplementation("net.fabricmc.fabric-api:fabric-api:${project.property("fabric_version")}")
+
+    testImplementation("org.junit.jupiter:junit-jupiter:5.10.3")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
 
 tasks {
@@ -34,6 +37,10 @@ tasks {
         options.release.set(21)
     }
 
+    test {
+        useJUnitPlatform()
+    }
+
     jar {
         from("LICENSE") {
             rename { "${it}_${project.base.archivesName.get()}" }
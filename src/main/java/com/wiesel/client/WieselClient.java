@@ -5,10 +5,15 @@ import com.wiesel.client.config.ConfigManager;
 import com.wiesel.client.pathfinder.AutoMapLoader;
 import com.wiesel.client.pathfinder.PathWalker;
 import com.wiesel.client.pathfinder.PathfinderManager;
+import com.wiesel.client.rendering.PathRenderer;
+import com.wiesel.client.rotation.BlockTransparency;
 import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientLifecycleEvents;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
+import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderEvents;
 import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.util.math.MatrixStack;
 import net.minecraft.text.Text;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,10 +29,6 @@ public class WieselClient implements ClientModInitializer {
         return instance;
     }
 
-    public ConfigManager getConfigManager() {
-        return new ConfigManager();
-    }
-
     @Override
     public void onInitializeClient() {
         instance = this;
@@ -35,6 +36,7 @@ public class WieselClient implements ClientModInitializer {
 
         // Load config
         ConfigManager.load();
+        ConfigManager.startWatching();
 
         // Register commands
         CommandManager.register();
@@ -44,6 +46,7 @@ public class WieselClient implements ClientModInitializer {
 
         // Register events
         registerEvents();
+        BlockTransparency.register();
 
         LOGGER.info("{} initialized successfully", MOD_NAME);
     }
@@ -64,13 +67,26 @@ public class WieselClient implements ClientModInitializer {
         ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> {
             PathWalker.stopWalking();
             AutoMapLoader.reset();
+            PathRenderer.close();
         });
 
-        // Client tick event for path walking, rotation, and auto map loading
+        // Write a pending config save before the game exits
+        ClientLifecycleEvents.CLIENT_STOPPING.register(client -> ConfigManager.flush());
+
+        // Client tick event for path walking and rotation
         ClientTickEvents.END_CLIENT_TICK.register(client -> {
             PathWalker.tick();
             PathWalker.getRotationManager().onRender();
-            AutoMapLoader.tick();
+        });
+
+        // Load the area's map as soon as the tab list changes
+        AutoMapLoader.register();
+
+        // Path rendering, after the world with the camera's view matrix
+        WorldRenderEvents.LAST.register(context -> {
+            MatrixStack matrices = new MatrixStack();
+            matrices.multiplyPositionMatrix(context.positionMatrix());
+            PathRenderer.render(matrices, context.tickCounter().getTickDelta(false), context.frustum());
         });
     }
 
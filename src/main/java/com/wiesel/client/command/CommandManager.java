@@ -4,6 +4,8 @@ import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.arguments.DoubleArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.wiesel.client.WieselClient;
+import com.wiesel.client.pathfinder.PathCache;
+import com.wiesel.client.pathfinder.PathQuery;
 import com.wiesel.client.pathfinder.PathWalker;
 import com.wiesel.client.pathfinder.PathfindResponse;
 import com.wiesel.client.pathfinder.PathfinderManager;
@@ -12,6 +14,9 @@ import net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource;
 import net.minecraft.command.CommandRegistryAccess;
 import net.minecraft.text.Text;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
 import static net.fabricmc.fabric.api.client.command.v2.ClientCommandManager.*;
 
 public class CommandManager {
@@ -44,27 +49,47 @@ public class CommandManager {
 
                                 context.getSource().sendFeedback(Text.literal("§aCalculating path to §e" + x + ", " + y + ", " + z + "§a..."));
 
-                                // Calculate path in separate thread
-                                new Thread(() -> {
-                                    try {
-                                        PathfindResponse path = PathfinderManager.pathfind(startX, startY, startZ, x, y, z);
+                                // Stream the path and start walking with the first segment; a newer goto cancels this one
+                                var client = context.getSource().getClient();
+                                PathQuery query = new PathQuery(startX, startY, startZ, x, y, z);
+                                AtomicReference<CompletableFuture<PathfindResponse>> holder = new AtomicReference<>();
+                                PathWalker.beginStreaming();
+                                CompletableFuture<PathfindResponse> request = PathfinderManager.pathfindStreaming(query, segment ->
+                                    client.execute(() -> {
+                                        // A cache hit emits before the request is returned
+                                        CompletableFuture<PathfindResponse> current = holder.get();
+                                        if (current == null || PathfinderManager.isLatest(current)) {
+                                            PathWalker.appendSegment(segment);
+                                        }
+                                    }));
+                                holder.set(request);
+                                request.whenComplete((path, error) -> {
+                                    if (request.isCancelled()) {
+                                        return; // Superseded by a newer query
+                                    }
 
-                                        if (path != null && path.path != null && !path.path.isEmpty()) {
-                                            WieselClient.LOGGER.info("Path found with {} nodes", path.path.size());
-                                            context.getSource().sendFeedback(Text.literal("§aPath found! §e" + path.path.size() + " nodes§a. Starting walk..."));
+                                    // Only the winning request hops onto the main thread
+                                    client.execute(() -> {
+                                        if (!PathfinderManager.isLatest(request)) {
+                                            return;
+                                        }
 
-                                            // Start walking on the main thread
-                                            context.getSource().getClient().execute(() -> {
-                                                PathWalker.startWalking(path);
-                                            });
+                                        PathWalker.finishStreaming();
+                                        if (error != null) {
+                                            Throwable cause = error.getCause() != null ? error.getCause() : error;
+                                            WieselClient.LOGGER.error("Error finding path", cause);
+                                            PathWalker.stopWalking();
+                                            context.getSource().sendError(Text.literal("§cError: " + cause.getMessage()));
+                                        } else if (path != null && path.pathBuffer != null && !path.pathBuffer.isEmpty()) {
+                                            WieselClient.LOGGER.info("Path found with {} nodes", path.pathBuffer.size());
+                                            context.getSource().sendFeedback(Text.literal("§aPath found! §e" + path.pathBuffer.size()
+                                                + " nodes§a, walking started after §e" + PathWalker.getLastTimeToFirstStepMs() + "ms"));
                                         } else {
+                                            PathWalker.stopWalking();
                                             context.getSource().sendError(Text.literal("§cFailed to find path"));
                                         }
-                                    } catch (Exception e) {
-                                        WieselClient.LOGGER.error("Error finding path", e);
-                                        context.getSource().sendError(Text.literal("§cError: " + e.getMessage()));
-                                    }
-                                }, "WieselPathfinding").start();
+                                    });
+                                });
 
                                 return 1;
                             })
@@ -91,20 +116,29 @@ public class CommandManager {
                     return 1;
                 })
             )
+            .then(literal("cache")
+                .executes(context -> {
+                    PathCache cache = PathfinderManager.getPathCache();
+                    context.getSource().sendFeedback(Text.literal(String.format(
+                        "§aPath cache: §e%d§a entries (§e%.1f MB§a), §e%d§a hits, §e%d§a near hits, §e%d§a misses, §e%d§a evictions",
+                        cache.getEntryCount(), cache.getUsedBytes() / (1024.0 * 1024.0), cache.getHits(),
+                        cache.getNearMissHits(), cache.getMisses(), cache.getEvictions())));
+                    return 1;
+                })
+            )
             .then(literal("map")
                 .then(argument("mapname", StringArgumentType.word())
                     .executes(context -> {
                         String mapName = StringArgumentType.getString(context, "mapname");
                         context.getSource().sendFeedback(Text.literal("§aLoading map: §e" + mapName + "§a..."));
 
-                        new Thread(() -> {
-                            boolean success = PathfinderManager.loadMap(mapName);
-                            if (success) {
+                        PathfinderManager.loadMapAsync(mapName).whenComplete((handle, error) -> {
+                            if (error == null) {
                                 context.getSource().sendFeedback(Text.literal("§aMap loaded: §e" + mapName));
                             } else {
                                 context.getSource().sendError(Text.literal("§cFailed to load map: " + mapName));
                             }
-                        }, "WieselMapLoader").start();
+                        });
 
                         return 1;
                     })
@@ -2,117 +2,283 @@ package com.wiesel.client.config;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 import com.wiesel.client.WieselClient;
 import net.fabricmc.loader.api.FabricLoader;
 
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
+/**
+ * Owns the published config. {@link #getConfig()} returns an immutable snapshot behind one
+ * volatile reference, so reading it on the render or tick path is a single field load.
+ * Changes go through {@link #update}, which edits a copy and publishes it; subsystems that
+ * derive state from the config {@link #subscribe} instead of re-reading it.
+ *
+ * Edits to config.json are picked up while the game runs: the file is validated and, if
+ * valid, published like any other change. Saves are written in the background, coalesced,
+ * through a temp file that is moved over the old one.
+ */
 public class ConfigManager {
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
     private static final File CONFIG_DIR = new File(FabricLoader.getInstance().getGameDir().toFile(), "config/wiesel");
     private static final File CONFIG_FILE = new File(CONFIG_DIR, "config.json");
 
-    private static WieselConfig config;
+    private static volatile WieselConfig config;
+    private static final List<Consumer<WieselConfig>> listeners = new CopyOnWriteArrayList<>();
 
-    public static void load() {
+    private static final long SAVE_DELAY_MS = 500;
+    private static final long RELOAD_SETTLE_MS = 100; // Quiet time after a file event before reloading
+    private static final ScheduledExecutorService IO_EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "WieselConfigSaver");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final AtomicBoolean savePending = new AtomicBoolean(false);
+    private static final Object WRITE_LOCK = new Object();
+    private static volatile String lastWritten = null; // File contents we wrote or loaded last
+    private static Thread watcher = null;
+
+    public static synchronized void load() {
         if (!CONFIG_DIR.exists()) {
             CONFIG_DIR.mkdirs();
         }
 
         if (CONFIG_FILE.exists()) {
-            try (FileReader reader = new FileReader(CONFIG_FILE)) {
-                config = GSON.fromJson(reader, WieselConfig.class);
+            WieselConfig loaded;
+            try {
+                String json = Files.readString(CONFIG_FILE.toPath());
+                loaded = GSON.fromJson(json, WieselConfig.class);
+                String problem = validate(loaded);
+                if (problem != null) {
+                    throw new IllegalArgumentException(problem);
+                }
+                lastWritten = json;
                 WieselClient.LOGGER.info("Loaded config from {}", CONFIG_FILE.getAbsolutePath());
             } catch (Exception e) {
                 WieselClient.LOGGER.error("Failed to load config, using defaults", e);
-                config = new WieselConfig();
+                loaded = new WieselConfig();
             }
+            publish(loaded);
         } else {
-            config = new WieselConfig();
-            save();
+            publish(new WieselConfig());
+            write();
         }
     }
 
+    /**
+     * Save the config in the background. Saves within {@link #SAVE_DELAY_MS} of each other are
+     * coalesced into one write of the latest config.
+     */
     public static void save() {
-        try (FileWriter writer = new FileWriter(CONFIG_FILE)) {
-            GSON.toJson(config, writer);
-            WieselClient.LOGGER.info("Saved config to {}", CONFIG_FILE.getAbsolutePath());
-        } catch (Exception e) {
-            WieselClient.LOGGER.error("Failed to save config", e);
+        if (savePending.compareAndSet(false, true)) {
+            IO_EXECUTOR.schedule(ConfigManager::write, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
         }
     }
 
-    public static WieselConfig getConfig() {
-        if (config == null) {
-            load();
+    /**
+     * Write a pending save now, e.g. when the client stops.
+     */
+    public static void flush() {
+        if (savePending.get()) {
+            write();
         }
-        return config;
     }
 
-    public static File getConfigDir() {
-        return CONFIG_DIR;
+    /**
+     * Write to a temp file and move it over config.json, so a crash never leaves a partial file.
+     */
+    private static void write() {
+        synchronized (WRITE_LOCK) {
+            savePending.set(false);
+            String json = GSON.toJson(getConfig());
+            Path target = CONFIG_FILE.toPath();
+            Path tmp = new File(CONFIG_DIR, CONFIG_FILE.getName() + ".tmp").toPath();
+            try {
+                Files.writeString(tmp, json);
+                lastWritten = json; // Before the move, so the watcher recognises its event
+                try {
+                    Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+                WieselClient.LOGGER.info("Saved config to {}", CONFIG_FILE.getAbsolutePath());
+            } catch (Exception e) {
+                WieselClient.LOGGER.error("Failed to save config", e);
+            }
+        }
     }
 
-    public static File getMinecraftDir() {
-        return FabricLoader.getInstance().getGameDir().toFile();
+    /**
+     * Watch config/wiesel and swap in edits to config.json without a restart.
+     */
+    public static synchronized void startWatching() {
+        if (watcher != null) {
+            return;
+        }
+        watcher = new Thread(ConfigManager::watch, "WieselConfigWatcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private static void watch() {
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            CONFIG_DIR.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            while (true) {
+                WatchKey key = watchService.take();
+                long detected = System.nanoTime();
+                boolean changed = isConfigEvent(key);
+
+                // Editors save in several steps; wait until the events stop
+                WatchKey more;
+                while ((more = watchService.poll(RELOAD_SETTLE_MS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= isConfigEvent(more);
+                }
+                if (changed) {
+                    reload(detected);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            WieselClient.LOGGER.error("Config watcher stopped; edits need a restart", e);
+        }
+    }
+
+    private static boolean isConfigEvent(WatchKey key) {
+        boolean matches = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || CONFIG_FILE.getName().equals(String.valueOf(event.context()))) {
+                matches = true;
+            }
+        }
+        key.reset();
+        return matches;
     }
 
     /**
-     * Get a float value from config using dot notation (e.g. "rotation.yawSpeed")
+     * Parse and validate the edited file; publish it if it is valid, keep the current config if not.
      */
-    public static float getFloat(String path, float defaultValue) {
+    private static void reload(long detectedNanos) {
+        String json;
         try {
-            String[] parts = path.split("\\.");
-            if (parts.length != 2) return defaultValue;
-
-            WieselConfig cfg = getConfig();
-            switch (parts[0]) {
-                case "rotation":
-                    switch (parts[1]) {
-                        case "yawSpeed": return cfg.rotation.yawSpeed;
-                        case "pitchSpeed": return cfg.rotation.pitchSpeed;
-                        case "lookahead": return cfg.rotation.lookahead;
-                        case "lookaheadMinDist": return cfg.rotation.lookaheadMinDist;
-                        case "lookaheadMaxDist": return cfg.rotation.lookaheadMaxDist;
-                        case "cornerBoost": return cfg.rotation.cornerBoost;
-                    }
-                    break;
-                case "etherwarp":
-                    switch (parts[1]) {
-                        case "rotationSpeed": return cfg.etherwarp.rotationSpeed;
-                        case "overshootAmount": return cfg.etherwarp.overshootAmount;
-                        case "speedVariation": return cfg.etherwarp.speedVariation;
-                    }
-                    break;
-            }
+            json = Files.readString(CONFIG_FILE.toPath());
+        } catch (NoSuchFileException e) {
+            return; // Deleted or mid-replace; the next event brings the new file
         } catch (Exception e) {
-            WieselClient.LOGGER.error("Error getting config value: {}", path, e);
+            WieselClient.LOGGER.error("Failed to read edited config", e);
+            return;
+        }
+        if (json.equals(lastWritten)) {
+            return; // Our own save, or no actual change
+        }
+
+        WieselConfig loaded;
+        try {
+            loaded = GSON.fromJson(json, WieselConfig.class);
+        } catch (JsonParseException e) {
+            WieselClient.LOGGER.error("Edited config is not valid JSON, keeping the current one: {}", e.getMessage());
+            return;
+        }
+        String problem = validate(loaded);
+        if (problem != null) {
+            WieselClient.LOGGER.error("Edited config rejected, keeping the current one: {}", problem);
+            return;
         }
-        return defaultValue;
+
+        synchronized (ConfigManager.class) {
+            lastWritten = json;
+            publish(loaded);
+        }
+        WieselClient.LOGGER.info("Reloaded config in {}ms", (System.nanoTime() - detectedNanos) / 1_000_000);
     }
 
     /**
-     * Get a boolean value from config using dot notation (e.g. "rotation.enableLOS")
+     * @return what is wrong with the config, or null if it can be used
      */
-    public static boolean getBoolean(String path, boolean defaultValue) {
-        try {
-            String[] parts = path.split("\\.");
-            if (parts.length != 2) return defaultValue;
-
-            WieselConfig cfg = getConfig();
-            switch (parts[0]) {
-                case "rotation":
-                    if ("enableLOS".equals(parts[1])) return cfg.rotation.enableLOS;
-                    break;
-                case "etherwarp":
-                    if ("enableOvershoot".equals(parts[1])) return cfg.etherwarp.enableOvershoot;
-                    break;
+    static String validate(WieselConfig config) {
+        if (config == null) {
+            return "file is empty";
+        }
+        if (config.pathfinder == null || config.render == null || config.rotation == null || config.etherwarp == null) {
+            return "a settings section is null";
+        }
+        if (config.pathfinder.maxInFlightQueries < 1) {
+            return "pathfinder.maxInFlightQueries must be at least 1";
+        }
+        if (config.pathfinder.queryTimeoutMs <= 0 || config.pathfinder.keepaliveInterval <= 0) {
+            return "pathfinder timeouts and intervals must be positive";
+        }
+        if (config.rotation.yawSpeed <= 0 || config.rotation.pitchSpeed <= 0 || config.etherwarp.rotationSpeed <= 0) {
+            return "rotation speeds must be positive";
+        }
+        return null;
+    }
+
+    /**
+     * @return the current snapshot; never modify it, use {@link #update} instead
+     */
+    public static WieselConfig getConfig() {
+        WieselConfig current = config;
+        if (current == null) {
+            load();
+            current = config;
+        }
+        return current;
+    }
+
+    /**
+     * Apply a change to a copy of the config, publish and save it.
+     */
+    public static synchronized void update(Consumer<WieselConfig> edit) {
+        WieselConfig next = GSON.fromJson(GSON.toJsonTree(getConfig()), WieselConfig.class);
+        edit.accept(next);
+        publish(next);
+        save();
+    }
+
+    /**
+     * Call the listener with the current config now and with every config published later.
+     * Listeners run on the thread that publishes, so they should only copy what they need.
+     */
+    public static void subscribe(Consumer<WieselConfig> listener) {
+        listeners.add(listener);
+        listener.accept(getConfig());
+    }
+
+    private static void publish(WieselConfig next) {
+        config = next;
+        for (Consumer<WieselConfig> listener : listeners) {
+            try {
+                listener.accept(next);
+            } catch (Exception e) {
+                WieselClient.LOGGER.error("Config listener failed", e);
             }
-        } catch (Exception e) {
-            WieselClient.LOGGER.error("Error getting config value: {}", path, e);
         }
-        return defaultValue;
+    }
+
+    public static File getConfigDir() {
+        return CONFIG_DIR;
+    }
+
+    public static File getMinecraftDir() {
+        return FabricLoader.getInstance().getGameDir().toFile();
     }
 }
@@ -1,5 +1,9 @@
 package com.wiesel.client.config;
 
+/**
+ * Config data, read from config/wiesel/config.json. Instances published by {@link ConfigManager}
+ * are treated as immutable; change settings with {@link ConfigManager#update}.
+ */
 public class WieselConfig {
     public PathfinderSettings pathfinder = new PathfinderSettings();
     public RenderSettings render = new RenderSettings();
@@ -10,6 +14,18 @@ public class WieselConfig {
         public boolean autoStart = true;
         public String defaultMap = "hub";
         public int keepaliveInterval = 60000; // 60 seconds
+        public long startupTimeoutMs = 15000; // How long the external pathfinder may take to answer after starting
+        public String backend = "http"; // "http" (external process) or "local" (in-process A*)
+        public boolean binaryProtocol = true; // Use the binary socket protocol when the pathfinder offers it
+        public int maxInFlightQueries = 4; // Further queries wait until one finishes
+        public long queryTimeoutMs = 30000; // 30 seconds
+        public int pathCacheSizeMb = 32; // Memory budget for cached paths
+        public int pathCacheNearMissRadius = 4; // Reuse a cached path if the start is this close to it
+        public boolean hierarchicalSearch = true; // Local backend: route long queries over the precomputed cluster graph
+        public int mapMemoryBudgetMb = 512; // Local backend: maps kept loaded at once
+        public boolean preloadMaps = true; // Load the maps of likely next areas in the background
+        public boolean replanning = true; // Repair the path locally when knocked off course or blocked
+        public double deviationThreshold = 3.0; // Blocks away from the path before replanning
     }
 
     public static class RenderSettings {
@@ -19,6 +35,7 @@ public class WieselConfig {
         public int nodeHighlightInterval = 15; // Highlight every 15 blocks
         public float pathLineWidth = 2.0f;
         public float nodeAlpha = 0.5f;
+        public int detailDistance = 64; // Path chunks further away are drawn simplified
     }
 
     public static class RotationSettings {
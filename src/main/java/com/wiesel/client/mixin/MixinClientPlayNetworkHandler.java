@@ -0,0 +1,43 @@
+package com.wiesel.client.mixin;
+
+import com.wiesel.client.util.TablistReader;
+import net.minecraft.client.network.ClientPlayNetworkHandler;
+import net.minecraft.network.packet.s2c.play.PlayerListS2CPacket;
+import net.minecraft.network.packet.s2c.play.PlayerRemoveS2CPacket;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Feeds tab list changes to {@link TablistReader} as the packets are applied. The handlers
+ * re-run themselves on the client thread first, so TAIL is only reached there.
+ */
+@Mixin(ClientPlayNetworkHandler.class)
+public class MixinClientPlayNetworkHandler {
+
+    @Inject(method = "onPlayerList", at = @At("TAIL"))
+    private void wiesel$onPlayerList(PlayerListS2CPacket packet, CallbackInfo ci) {
+        EnumSet<PlayerListS2CPacket.Action> actions = packet.getActions();
+        if (!actions.contains(PlayerListS2CPacket.Action.ADD_PLAYER)
+                && !actions.contains(PlayerListS2CPacket.Action.UPDATE_DISPLAY_NAME)) {
+            return; // Latency, game mode etc. don't change what an entry shows
+        }
+
+        List<UUID> ids = new ArrayList<>(packet.getEntries().size());
+        for (PlayerListS2CPacket.Entry entry : packet.getEntries()) {
+            ids.add(entry.profileId());
+        }
+        TablistReader.onEntriesUpdated((ClientPlayNetworkHandler) (Object) this, ids);
+    }
+
+    @Inject(method = "onPlayerRemove", at = @At("TAIL"))
+    private void wiesel$onPlayerRemove(PlayerRemoveS2CPacket packet, CallbackInfo ci) {
+        TablistReader.onEntriesRemoved(packet.profileIds());
+    }
+}
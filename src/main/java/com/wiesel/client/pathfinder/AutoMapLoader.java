@@ -1,43 +1,36 @@
 package com.wiesel.client.pathfinder;
 
 import com.wiesel.client.WieselClient;
+import com.wiesel.client.config.ConfigManager;
+import com.wiesel.client.util.AreaChanged;
 import com.wiesel.client.util.TablistReader;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Loads the map of the current area as soon as the tab list reports an area change, then
+ * preloads the maps of the areas usually visited next, so the following switch is instant.
+ * Loads, retries and preloads all run on {@link PathfinderManager}'s map loading thread.
+ */
 public class AutoMapLoader {
-    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
-        Thread t = new Thread(r, "WieselMapLoader");
-        t.setDaemon(true);
-        return t;
-    });
+    private static final long RETRY_DELAY_MS = 3000; // Retry a failed load while still in the area
 
-    private static String lastLoadedMap = null;
-    private static long lastCheckTime = 0;
-    private static final long CHECK_INTERVAL = 3000; // Check every 3 seconds
+    // Maps usually needed after each map, most likely first
+    private static final Map<String, List<String>> NEXT_MAPS = Map.of(
+        "hub", List.of("mines", "galatea"),
+        "mines", List.of("hub"),
+        "galatea", List.of("hub"));
 
-    public static void tick() {
-        long currentTime = System.currentTimeMillis();
+    private static volatile String lastLoadedMap = null;
 
-        // Don't check too frequently
-        if (currentTime - lastCheckTime < CHECK_INTERVAL) {
-            return;
-        }
-
-        lastCheckTime = currentTime;
-
-        if (!TablistReader.isInWorld()) {
-            return;
-        }
-
-        String currentArea = TablistReader.getCurrentArea();
-        if (currentArea == null) {
-            return;
-        }
+    public static void register() {
+        AreaChanged.EVENT.register((previousArea, area) -> onAreaChanged(area));
+    }
 
-        // Check if we need to load a new map
-        if (currentArea.equals(lastLoadedMap)) {
+    private static void onAreaChanged(String currentArea) {
+        if (currentArea == null || currentArea.equals(lastLoadedMap)) {
             return; // Already loaded
         }
 
@@ -50,7 +43,7 @@ public class AutoMapLoader {
         WieselClient.LOGGER.info("Detected area change: {} -> Loading map: {}", currentArea, mapName);
 
         // Load map in background thread
-        loadMapAsync(mapName, currentArea);
+        loadMapAsync(mapName, currentArea, 0);
     }
 
     private static String mapAreaToMapName(String area) {
@@ -71,33 +64,50 @@ public class AutoMapLoader {
         }
     }
 
-    private static void loadMapAsync(String mapName, String areaName) {
-        EXECUTOR.submit(() -> {
-            try {
-                WieselClient.LOGGER.info("Loading map '{}' in background...", mapName);
-                boolean success = PathfinderManager.loadMap(mapName);
+    private static void loadMapAsync(String mapName, String areaName, long delayMs) {
+        PathfinderManager.MAP_EXECUTOR.schedule(() -> {
+            // The player may have moved on while this was queued
+            if (!areaName.equals(TablistReader.getCurrentArea())) {
+                return;
+            }
 
-                if (success) {
+            WieselClient.LOGGER.info("Loading map '{}' in background...", mapName);
+            PathfinderManager.loadMapAsync(mapName).whenComplete((handle, error) -> {
+                if (error == null) {
                     lastLoadedMap = areaName;
-                    WieselClient.LOGGER.info("Successfully loaded map: {}", mapName);
-                } else {
-                    WieselClient.LOGGER.error("Failed to load map: {}", mapName);
+                    WieselClient.LOGGER.info("Successfully loaded map: {}", handle);
+                    preloadNextMaps(mapName);
+                    return;
                 }
-            } catch (Exception e) {
-                WieselClient.LOGGER.error("Error loading map asynchronously", e);
-            }
-        });
+                WieselClient.LOGGER.error("Failed to load map: {}", mapName);
+                loadMapAsync(mapName, areaName, RETRY_DELAY_MS);
+            });
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static void preloadNextMaps(String mapName) {
+        if (!ConfigManager.getConfig().pathfinder.preloadMaps || !PathfinderManager.getBackend().supportsResidentMaps()) {
+            return;
+        }
+
+        for (String next : NEXT_MAPS.getOrDefault(mapName, List.of())) {
+            PathfinderManager.MAP_EXECUTOR.execute(() -> {
+                if (PathfinderManager.getBackend().isResident(next)) {
+                    return;
+                }
+                if (PathfinderManager.preloadMap(next)) {
+                    WieselClient.LOGGER.info("Preloaded map: {}", next);
+                }
+            });
+        }
     }
 
     public static void reset() {
         lastLoadedMap = null;
+        TablistReader.reset();
     }
 
     public static String getLastLoadedMap() {
         return lastLoadedMap;
     }
-
-    public static void shutdown() {
-        EXECUTOR.shutdown();
-    }
 }
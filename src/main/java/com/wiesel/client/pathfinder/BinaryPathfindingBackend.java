@@ -0,0 +1,330 @@
+package com.wiesel.client.pathfinder;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.wiesel.client.WieselClient;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.net.UnixDomainSocketAddress;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Backend speaking the compact binary protocol ({@link PathWireCodec}) to the external
+ * pathfinder over a persistent local socket.
+ *
+ * The socket is negotiated through GET /api/protocol, which answers with the protocol
+ * version and either a "unix_socket" path or a "tcp_port". When the pathfinder does not
+ * offer a compatible binary endpoint, or the socket fails, queries go through the JSON
+ * HTTP endpoints instead.
+ *
+ * The socket is non-blocking and every reply has a deadline, so a hung pathfinder can't keep
+ * a worker (and this backend's lock) waiting forever. A timed-out connection is closed, as is
+ * one that sent a malformed frame.
+ */
+public class BinaryPathfindingBackend implements PathfindingBackend {
+    private static final long RENEGOTIATE_INTERVAL_MS = 30000;
+    private static final int INITIAL_RECEIVE_BUFFER = 64 * 1024;
+
+    private final String apiUrl;
+    private final HttpClient httpClient;
+    private final HttpPathfindingBackend fallback;
+    private volatile long timeoutMs; // Longest wait for one reply
+
+    private SocketAddress address = null;
+    private long lastNegotiation = 0;
+    private SocketChannel channel = null;
+    private Selector selector = null;
+    private final ByteBuffer header = ByteBuffer.allocate(4);
+    private ByteBuffer receiveBuffer = ByteBuffer.allocate(INITIAL_RECEIVE_BUFFER);
+
+    public BinaryPathfindingBackend(String apiUrl, HttpClient httpClient, long timeoutMs) {
+        this.apiUrl = apiUrl;
+        this.httpClient = httpClient;
+        this.fallback = new HttpPathfindingBackend(apiUrl, httpClient);
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Change the longest wait for one reply; takes effect from the next query.
+     */
+    void setTimeoutMs(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    @Override
+    public synchronized boolean loadMap(String mapName) {
+        if (ensureChannel()) {
+            try {
+                ByteBuffer reply = exchange(PathWireCodec.encodeLoadMap(mapName));
+                byte type = reply.get();
+                if (type == PathWireCodec.FRAME_OK) {
+                    return true;
+                }
+                WieselClient.LOGGER.error("Failed to load map '{}': {}", mapName, describeError(type, reply));
+                return false;
+            } catch (InterruptedIOException e) {
+                WieselClient.LOGGER.error("Loading map '{}' over the binary connection failed: {}", mapName, e.getMessage());
+                closeChannel();
+                return false;
+            } catch (IOException | RuntimeException e) {
+                WieselClient.LOGGER.warn("Binary pathfinder connection failed, falling back to JSON", e);
+                closeChannel();
+            }
+        }
+        return fallback.loadMap(mapName);
+    }
+
+    @Override
+    public synchronized PathfindResponse pathfind(PathQuery query) throws Exception {
+        if (Thread.currentThread().isInterrupted()) {
+            // Cancelled while another query held the socket
+            throw new InterruptedIOException("Pathfind query cancelled");
+        }
+        if (ensureChannel()) {
+            try {
+                ByteBuffer reply = exchange(PathWireCodec.encodePathfind(query));
+                byte type = reply.get();
+                if (type == PathWireCodec.FRAME_PATH) {
+                    return PathWireCodec.decodePath(reply);
+                }
+                WieselClient.LOGGER.error("Pathfinding failed: {}", describeError(type, reply));
+                return null;
+            } catch (InterruptedIOException e) {
+                // Timed out or cancelled; a pathfinder this slow won't answer over JSON either
+                closeChannel();
+                throw e;
+            } catch (IOException | RuntimeException e) {
+                WieselClient.LOGGER.warn("Binary pathfinder connection failed, falling back to JSON", e);
+                closeChannel();
+            }
+        }
+        return fallback.pathfind(query);
+    }
+
+    /**
+     * The binary protocol answers with whole paths, so streaming queries go over HTTP as long as
+     * the pathfinder offers the streaming endpoint.
+     */
+    @Override
+    public CompletableFuture<PathfindResponse> pathfindStreaming(PathQuery query, Executor executor,
+                                                                 Consumer<PathBuffer> onSegment) {
+        if (fallback.isStreamingSupported()) {
+            return fallback.pathfindStreaming(query, executor, onSegment);
+        }
+        return PathfindingBackend.super.pathfindStreaming(query, executor, onSegment);
+    }
+
+    /**
+     * Multi-goal queries and batches have no binary frames; they go over HTTP while the
+     * pathfinder offers those endpoints, else goal by goal over the socket.
+     */
+    @Override
+    public PathfindResponse pathfindNearest(MultiGoalQuery query) throws Exception {
+        if (fallback.isMultiGoalSupported()) {
+            return fallback.pathfindNearest(query);
+        }
+        return PathfindingBackend.super.pathfindNearest(query);
+    }
+
+    @Override
+    public List<PathfindResponse> pathfindBatch(List<PathQuery> queries) throws Exception {
+        if (fallback.isBatchSupported()) {
+            return fallback.pathfindBatch(queries);
+        }
+        return PathfindingBackend.super.pathfindBatch(queries);
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        closeChannel();
+    }
+
+    /**
+     * @return true if a binary connection is open (negotiating and connecting if needed)
+     */
+    private boolean ensureChannel() {
+        if (channel != null && channel.isOpen()) {
+            return true;
+        }
+
+        long now = System.currentTimeMillis();
+        if (address == null) {
+            if (now - lastNegotiation < RENEGOTIATE_INTERVAL_MS) {
+                return false;
+            }
+            lastNegotiation = now;
+            address = negotiate();
+            if (address == null) {
+                return false;
+            }
+        }
+
+        try {
+            channel = address instanceof UnixDomainSocketAddress
+                ? SocketChannel.open(StandardProtocolFamily.UNIX)
+                : SocketChannel.open();
+            if (address instanceof InetSocketAddress) {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+            channel.connect(address);
+            channel.configureBlocking(false);
+            selector = Selector.open();
+            channel.register(selector, 0);
+
+            ByteBuffer reply = exchange(PathWireCodec.encodeHello());
+            if (reply.get() != PathWireCodec.FRAME_HELLO || PathWireCodec.getVarInt(reply) != PathWireCodec.PROTOCOL_VERSION) {
+                throw new IOException("Pathfinder rejected binary protocol version " + PathWireCodec.PROTOCOL_VERSION);
+            }
+
+            WieselClient.LOGGER.info("Connected to pathfinder via binary protocol at {}", address);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            WieselClient.LOGGER.warn("Could not open binary pathfinder connection to {}, using JSON", address, e);
+            closeChannel();
+            address = null;
+            return false;
+        }
+    }
+
+    private SocketAddress negotiate() {
+        try {
+            HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(apiUrl + "/api/protocol"))
+                .timeout(Duration.ofSeconds(2))
+                .GET()
+                .build();
+
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                WieselClient.LOGGER.info("Pathfinder does not offer a binary protocol, using JSON");
+                return null;
+            }
+
+            JsonObject json = JsonParser.parseString(response.body()).getAsJsonObject();
+            int version = json.has("version") ? json.get("version").getAsInt() : 0;
+            if (version != PathWireCodec.PROTOCOL_VERSION) {
+                WieselClient.LOGGER.info("Pathfinder binary protocol v{} is not supported, using JSON", version);
+                return null;
+            }
+
+            if (json.has("unix_socket")) {
+                return UnixDomainSocketAddress.of(json.get("unix_socket").getAsString());
+            }
+            if (json.has("tcp_port")) {
+                return new InetSocketAddress(URI.create(apiUrl).getHost(), json.get("tcp_port").getAsInt());
+            }
+            return null;
+        } catch (Exception e) {
+            WieselClient.LOGGER.debug("Binary protocol negotiation failed", e);
+            return null;
+        }
+    }
+
+    /**
+     * Send one frame and read the reply frame, within the timeout.
+     * @return the reply payload, positioned at the frame type byte
+     */
+    private ByteBuffer exchange(ByteBuffer payload) throws IOException {
+        long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+        header.clear();
+        header.putInt(payload.remaining()).flip();
+        ByteBuffer[] frame = {header, payload};
+        while (header.hasRemaining() || payload.hasRemaining()) {
+            if (channel.write(frame) == 0) {
+                await(SelectionKey.OP_WRITE, deadline);
+            }
+        }
+
+        header.clear();
+        readFully(header, deadline);
+        int length = header.flip().getInt();
+        if (length <= 0 || length > PathWireCodec.MAX_FRAME_SIZE) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+
+        if (receiveBuffer.capacity() < length) {
+            receiveBuffer = ByteBuffer.allocate(Math.max(length, receiveBuffer.capacity() * 2));
+        }
+        receiveBuffer.clear().limit(length);
+        readFully(receiveBuffer, deadline);
+        return receiveBuffer.flip();
+    }
+
+    private void readFully(ByteBuffer buf, long deadline) throws IOException {
+        while (buf.hasRemaining()) {
+            int read = channel.read(buf);
+            if (read < 0) {
+                throw new EOFException("Pathfinder closed the connection");
+            }
+            if (read == 0) {
+                await(SelectionKey.OP_READ, deadline);
+            }
+        }
+    }
+
+    /**
+     * Wait until the channel is ready for the operation.
+     * @throws SocketTimeoutException if the deadline passes first
+     * @throws InterruptedIOException if the waiting thread is interrupted
+     */
+    private void await(int operation, long deadline) throws IOException {
+        long remainingMs = (deadline - System.nanoTime()) / 1_000_000L;
+        if (remainingMs <= 0) {
+            throw new SocketTimeoutException("No reply from the pathfinder within " + timeoutMs + "ms");
+        }
+        channel.keyFor(selector).interestOps(operation);
+        selector.select(remainingMs);
+        selector.selectedKeys().clear();
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Interrupted while waiting for the pathfinder");
+        }
+    }
+
+    private static String describeError(byte type, ByteBuffer reply) throws IOException {
+        if (type == PathWireCodec.FRAME_ERROR) {
+            return PathWireCodec.decodeString(reply);
+        }
+        return "unexpected frame type " + type;
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+        }
+        if (selector != null) {
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+            selector = null;
+        }
+    }
+}
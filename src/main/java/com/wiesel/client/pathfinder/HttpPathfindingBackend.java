@@ -0,0 +1,310 @@
+package com.wiesel.client.pathfinder;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.wiesel.client.WieselClient;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Backend that forwards queries to the external pathfinder process over its HTTP API.
+ *
+ * Streaming queries use POST /api/pathfind/stream, which answers with newline-delimited JSON:
+ * {"path":[...]} per finalized segment, then {"done":true,"keynodes":[...]} or {"error":"..."}.
+ * Pathfinders without that endpoint get a regular query instead.
+ *
+ * Multi-goal queries use POST /api/pathfind/multi (a pathfind body with "goals" instead of
+ * "end", answered like /api/pathfind plus "goal_index" and "cost"), and batches use
+ * POST /api/pathfind/batch ({"queries": [...]} answered by {"results": [...]}). Without those
+ * endpoints the queries are sent one by one.
+ */
+public class HttpPathfindingBackend implements PathfindingBackend {
+    private static final Gson GSON = new Gson();
+
+    private final String apiUrl;
+    private final HttpClient httpClient;
+    private volatile boolean streamingSupported = true;
+    private volatile boolean multiGoalSupported = true;
+    private volatile boolean batchSupported = true;
+
+    public HttpPathfindingBackend(String apiUrl, HttpClient httpClient) {
+        this.apiUrl = apiUrl;
+        this.httpClient = httpClient;
+    }
+
+    @Override
+    public String getName() {
+        return "http";
+    }
+
+    @Override
+    public boolean loadMap(String mapName) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(apiUrl + "/api/loadmap?map=" + mapName))
+                .GET()
+                .build();
+
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+            if (response.statusCode() == 200) {
+                return true;
+            } else {
+                WieselClient.LOGGER.error("Failed to load map '{}': {}", mapName, response.body());
+                return false;
+            }
+        } catch (Exception e) {
+            WieselClient.LOGGER.error("Failed to load map: {}", mapName, e);
+            return false;
+        }
+    }
+
+    @Override
+    public PathfindResponse pathfind(PathQuery query) throws Exception {
+        HttpResponse<InputStream> response = httpClient.send(buildPathfindRequest(query), HttpResponse.BodyHandlers.ofInputStream());
+        return readResponse(response);
+    }
+
+    @Override
+    public CompletableFuture<PathfindResponse> pathfindAsync(PathQuery query, Executor executor) {
+        CompletableFuture<HttpResponse<InputStream>> exchange =
+            httpClient.sendAsync(buildPathfindRequest(query), HttpResponse.BodyHandlers.ofInputStream());
+
+        // Decoding reads the body stream, so do it off the HTTP client's threads
+        CompletableFuture<PathfindResponse> result = exchange.thenApplyAsync(response -> {
+            try {
+                return readResponse(response);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+
+        // Cancelling the result (or timing it out) aborts the underlying HTTP exchange
+        result.whenComplete((response, error) -> {
+            if (error != null) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<PathfindResponse> pathfindStreaming(PathQuery query, Executor executor,
+                                                                 Consumer<PathBuffer> onSegment) {
+        if (!streamingSupported) {
+            return PathfindingBackend.super.pathfindStreaming(query, executor, onSegment);
+        }
+
+        CompletableFuture<HttpResponse<InputStream>> exchange = httpClient.sendAsync(
+            buildPathfindRequest(query, "/api/pathfind/stream"), HttpResponse.BodyHandlers.ofInputStream());
+
+        CompletableFuture<PathfindResponse> result = exchange.thenComposeAsync(response -> {
+            if (response.statusCode() == 404) {
+                closeQuietly(response.body());
+                streamingSupported = false;
+                WieselClient.LOGGER.info("Pathfinder does not support streaming, using regular queries");
+                return PathfindingBackend.super.pathfindStreaming(query, executor, onSegment);
+            }
+
+            try {
+                return CompletableFuture.completedFuture(readStream(response, onSegment));
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }, executor);
+
+        result.whenComplete((response, error) -> {
+            if (error != null) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public PathfindResponse pathfindNearest(MultiGoalQuery query) throws Exception {
+        if (!multiGoalSupported || query.getGoalCount() == 0) {
+            return PathfindingBackend.super.pathfindNearest(query);
+        }
+
+        JsonObject body = new JsonObject();
+        body.addProperty("start", position(query.startX, query.startY, query.startZ));
+        JsonArray goals = new JsonArray();
+        for (int i = 0; i < query.getGoalCount(); i++) {
+            goals.add(position(query.getGoalX(i), query.getGoalY(i), query.getGoalZ(i)));
+        }
+        body.add("goals", goals);
+        body.addProperty("use_keynodes", query.useKeynodes);
+        body.addProperty("is_perfect_path", query.isPerfectPath);
+
+        HttpResponse<InputStream> response = httpClient.send(post("/api/pathfind/multi", body),
+            HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() == 404) {
+            closeQuietly(response.body());
+            multiGoalSupported = false;
+            WieselClient.LOGGER.info("Pathfinder does not support multi-goal queries, querying goals one by one");
+            return PathfindingBackend.super.pathfindNearest(query);
+        }
+        return readResponse(response);
+    }
+
+    @Override
+    public List<PathfindResponse> pathfindBatch(List<PathQuery> queries) throws Exception {
+        if (!batchSupported || queries.size() < 2) {
+            return PathfindingBackend.super.pathfindBatch(queries);
+        }
+
+        JsonArray array = new JsonArray();
+        for (PathQuery query : queries) {
+            array.add(toJson(query));
+        }
+        JsonObject body = new JsonObject();
+        body.add("queries", array);
+
+        HttpResponse<InputStream> response = httpClient.send(post("/api/pathfind/batch", body),
+            HttpResponse.BodyHandlers.ofInputStream());
+        try (Reader reader = new InputStreamReader(response.body(), StandardCharsets.UTF_8)) {
+            if (response.statusCode() == 404) {
+                batchSupported = false;
+                WieselClient.LOGGER.info("Pathfinder does not support batch queries, sending them one by one");
+            } else if (response.statusCode() != 200) {
+                // One response per query or none at all; fail the whole batch
+                throw new IOException("Batch pathfinding failed with status " + response.statusCode() + ": " + readFully(reader));
+            } else {
+                List<PathfindResponse> results = PathResponseDecoder.decodeBatch(reader);
+                if (results.size() != queries.size()) {
+                    throw new IOException("Batch response has " + results.size() + " results for " + queries.size() + " queries");
+                }
+                return results;
+            }
+        }
+        return PathfindingBackend.super.pathfindBatch(queries);
+    }
+
+    /**
+     * @return whether the pathfinder offers the streaming endpoint (as far as we know)
+     */
+    public boolean isStreamingSupported() {
+        return streamingSupported;
+    }
+
+    /**
+     * @return whether the pathfinder offers the multi-goal endpoint (as far as we know)
+     */
+    public boolean isMultiGoalSupported() {
+        return multiGoalSupported;
+    }
+
+    /**
+     * @return whether the pathfinder offers the batch endpoint (as far as we know)
+     */
+    public boolean isBatchSupported() {
+        return batchSupported;
+    }
+
+    private HttpRequest buildPathfindRequest(PathQuery query) {
+        return buildPathfindRequest(query, "/api/pathfind");
+    }
+
+    private HttpRequest buildPathfindRequest(PathQuery query, String endpoint) {
+        return post(endpoint, toJson(query));
+    }
+
+    private HttpRequest post(String endpoint, JsonObject body) {
+        return HttpRequest.newBuilder()
+            .uri(URI.create(apiUrl + endpoint))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(GSON.toJson(body)))
+            .build();
+    }
+
+    /**
+     * A position in the API's "x,y,z" block format.
+     */
+    private static String position(double x, double y, double z) {
+        return PathQuery.toBlock(x) + "," + PathQuery.toBlock(y) + "," + PathQuery.toBlock(z);
+    }
+
+    private static JsonObject toJson(PathQuery query) {
+        JsonObject requestBody = new JsonObject();
+        requestBody.addProperty("start", position(query.startX, query.startY, query.startZ));
+        requestBody.addProperty("end", position(query.endX, query.endY, query.endZ));
+        requestBody.addProperty("use_warp_points", query.useWarpPoints);
+        requestBody.addProperty("use_etherwarp", query.useEtherwarp);
+        requestBody.addProperty("use_keynodes", query.useKeynodes);
+        requestBody.addProperty("use_spline", query.useSpline);
+        requestBody.addProperty("is_perfect_path", query.isPerfectPath);
+        return requestBody;
+    }
+
+    private static PathfindResponse readResponse(HttpResponse<InputStream> response) throws IOException {
+        try (Reader reader = new InputStreamReader(response.body(), StandardCharsets.UTF_8)) {
+            if (response.statusCode() != 200) {
+                WieselClient.LOGGER.error("Pathfinding failed: {}", readFully(reader));
+                return null;
+            }
+
+            // Decode straight from the response stream into the path buffers
+            return PathResponseDecoder.decode(reader);
+        }
+    }
+
+    private static PathfindResponse readStream(HttpResponse<InputStream> response, Consumer<PathBuffer> onSegment)
+            throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+            if (response.statusCode() != 200) {
+                WieselClient.LOGGER.error("Pathfinding failed: {}", readFully(reader));
+                return null;
+            }
+
+            PathBuffer path = new PathBuffer();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+
+                PathResponseDecoder.StreamChunk chunk = PathResponseDecoder.decodeChunk(line);
+                if (chunk.error != null) {
+                    WieselClient.LOGGER.error("Pathfinding failed: {}", chunk.error);
+                    return null;
+                }
+                if (chunk.path != null && !chunk.path.isEmpty()) {
+                    path.addAll(chunk.path);
+                    onSegment.accept(chunk.path);
+                }
+                if (chunk.done) {
+                    return new PathfindResponse(path, chunk.keynodes != null ? chunk.keynodes : new PathBuffer(0));
+                }
+            }
+            throw new IOException("Pathfind stream ended before the path was complete");
+        }
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static String readFully(Reader reader) throws IOException {
+        StringWriter writer = new StringWriter();
+        reader.transferTo(writer);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,466 @@
+package com.wiesel.client.pathfinder;
+
+import com.wiesel.client.WieselClient;
+import com.wiesel.client.pathfinder.engine.AStarSearch;
+import com.wiesel.client.pathfinder.engine.HierarchicalGraph;
+import com.wiesel.client.pathfinder.engine.VoxelMapStore;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * In-process backend running A* directly on the extracted map files in maps/{name}/.
+ * Avoids the HTTP round-trip and process startup of the external pathfinder. Maps are read
+ * through a memory-mapped {@link VoxelMapStore}, so loading one does not parse or copy the
+ * whole node set onto the heap. Long queries go through the map's precomputed
+ * {@link HierarchicalGraph} unless a perfect path is requested.
+ *
+ * Several maps stay resident up to a memory budget; the least recently used ones are closed
+ * first, never the current one. Switching back to a resident map, or querying it explicitly
+ * through {@link PathQuery#mapId}, costs nothing. Maps are built outside the backend's lock and
+ * published when complete, so loading one never stalls queries on the others; concurrent
+ * requests for a map that is loading wait for that one load. Queries on the
+ * same map run in parallel, each with its own search state from a per-map pool, and an
+ * evicted map is only closed once its running queries have finished.
+ *
+ * Warp points, etherwarp and spline smoothing are only available from the external
+ * pathfinder; those flags are ignored here.
+ */
+public class LocalPathfindingBackend implements PathfindingBackend {
+    private static final int SNAP_HORIZONTAL_RADIUS = 3;
+    private static final int SNAP_VERTICAL_RADIUS = 4;
+    private static final float FAST_HEURISTIC_WEIGHT = 1.2f;
+
+    private final File mapsDir;
+    private final boolean hierarchical;
+    private final long memoryBudgetBytes;
+
+    // Access-ordered: iteration starts at the least recently used map
+    private final LinkedHashMap<String, ResidentMap> resident = new LinkedHashMap<>(4, 0.75f, true);
+    private volatile ResidentMap current = null;
+    // Maps being built; callers asking for one of them join its load instead of starting another
+    private final ConcurrentHashMap<String, CompletableFuture<ResidentMap>> loading = new ConcurrentHashMap<>();
+
+    public LocalPathfindingBackend(File mapsDir, boolean hierarchical, long memoryBudgetBytes) {
+        this.mapsDir = mapsDir;
+        this.hierarchical = hierarchical;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    @Override
+    public String getName() {
+        return "local";
+    }
+
+    @Override
+    public boolean loadMap(String mapName) {
+        ResidentMap map = acquire(mapName);
+        if (map == null) {
+            return false;
+        }
+        List<ResidentMap> evicted;
+        synchronized (this) {
+            current = map;
+            evicted = evict();
+        }
+        close(evicted);
+        return true;
+    }
+
+    @Override
+    public boolean preloadMap(String mapName) {
+        if (acquire(mapName) == null) {
+            return false;
+        }
+        List<ResidentMap> evicted;
+        boolean kept;
+        synchronized (this) {
+            evicted = evict();
+            kept = resident.containsKey(mapName);
+        }
+        close(evicted);
+        return kept;
+    }
+
+    @Override
+    public boolean supportsResidentMaps() {
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isResident(String mapName) {
+        return resident.containsKey(mapName);
+    }
+
+    /**
+     * @return the resident map, loading it if needed; null if it can't be loaded
+     */
+    private ResidentMap acquire(String mapName) {
+        CompletableFuture<ResidentMap> load;
+        synchronized (this) {
+            ResidentMap map = resident.get(mapName);
+            if (map != null) {
+                return map;
+            }
+            load = loading.get(mapName);
+            if (load == null) {
+                loading.put(mapName, new CompletableFuture<>());
+            }
+        }
+        if (load != null) {
+            return load.join();
+        }
+
+        ResidentMap map = null;
+        try {
+            map = build(mapName);
+        } finally {
+            synchronized (this) {
+                if (map != null) {
+                    resident.put(mapName, map);
+                }
+                load = loading.remove(mapName);
+            }
+            load.complete(map);
+        }
+        return map;
+    }
+
+    /**
+     * Open the map's store and path abstraction, building their cache files if needed.
+     * Only one thread builds a given map at a time, since both write fixed temp files. A map
+     * that is still being extracted is waited for first.
+     */
+    private ResidentMap build(String mapName) {
+        PathfinderManager.awaitExtraction(mapName);
+        try {
+            long start = System.currentTimeMillis();
+            File mapDir = new File(mapsDir, mapName);
+            VoxelMapStore store = VoxelMapStore.open(mapName, mapDir);
+            HierarchicalGraph hierarchy = null;
+            if (hierarchical) {
+                try {
+                    hierarchy = HierarchicalGraph.open(store, mapDir);
+                } catch (Exception e) {
+                    WieselClient.LOGGER.warn("No path abstraction for map '{}', using plain A*", mapName, e);
+                }
+            }
+            ResidentMap map = new ResidentMap(store, hierarchy);
+            WieselClient.LOGGER.info("Loaded map '{}' in-process: {} nodes in {} regions ({} KB) in {}ms",
+                mapName, store.size(), store.getRegionCount(), map.bytes / 1024, System.currentTimeMillis() - start);
+            return map;
+        } catch (Exception e) {
+            WieselClient.LOGGER.error("Failed to load map in-process: {}", mapName, e);
+            return null;
+        }
+    }
+
+    /**
+     * Remove least recently used maps until the resident ones fit the budget.
+     * @return the removed maps, to be closed outside the lock
+     */
+    private List<ResidentMap> evict() {
+        List<ResidentMap> evicted = new ArrayList<>();
+        long total = 0;
+        for (ResidentMap map : resident.values()) {
+            total += map.bytes;
+        }
+
+        Iterator<ResidentMap> it = resident.values().iterator();
+        while (total > memoryBudgetBytes && it.hasNext()) {
+            ResidentMap map = it.next();
+            if (map == current) {
+                continue;
+            }
+            it.remove();
+            total -= map.bytes;
+            evicted.add(map);
+            WieselClient.LOGGER.info("Evicted map '{}' to stay within the {} MB map budget",
+                map.store.getName(), memoryBudgetBytes / (1024 * 1024));
+        }
+        return evicted;
+    }
+
+    private static void close(List<ResidentMap> maps) {
+        for (ResidentMap map : maps) {
+            map.close();
+        }
+    }
+
+    @Override
+    public PathfindResponse pathfind(PathQuery query) {
+        return pathfind(query, null);
+    }
+
+    /**
+     * Streams refined stretches of hierarchical routes as they are produced; other queries
+     * arrive as one segment.
+     */
+    @Override
+    public CompletableFuture<PathfindResponse> pathfindStreaming(PathQuery query, Executor executor,
+                                                                 Consumer<PathBuffer> onSegment) {
+        return PathfindingBackend.runInterruptibly(() -> pathfind(query, onSegment), executor);
+    }
+
+    private PathfindResponse pathfind(PathQuery query, Consumer<PathBuffer> onSegment) {
+        return onMap(query.mapId, (map, search) -> pathfind(map, search, query, onSegment));
+    }
+
+    /**
+     * One search towards all goals; the goals' bounding box guides the heuristic. Goals away
+     * from walkable ground are skipped.
+     */
+    @Override
+    public PathfindResponse pathfindNearest(MultiGoalQuery query) {
+        return onMap(query.mapId, (map, search) -> {
+            int start = map.snap(query.startX, query.startY, query.startZ);
+            if (start < 0) {
+                WieselClient.LOGGER.error("Pathfinding failed: start is not near walkable ground");
+                return null;
+            }
+
+            int[] goals = new int[query.getGoalCount()];
+            int[] goalIndices = new int[goals.length];
+            int count = 0;
+            for (int i = 0; i < goals.length; i++) {
+                int goal = map.snap(query.getGoalX(i), query.getGoalY(i), query.getGoalZ(i));
+                if (goal >= 0) {
+                    goals[count] = goal;
+                    goalIndices[count++] = i;
+                }
+            }
+
+            int[] indices = search.searchAny(start, Arrays.copyOf(goals, count),
+                query.isPerfectPath ? 1.0f : FAST_HEURISTIC_WEIGHT);
+            if (indices == null) {
+                WieselClient.LOGGER.error("Pathfinding failed: no route found for {}", query);
+                return null;
+            }
+
+            // Several goals can snap to the same node; report the first
+            int reached = indices[indices.length - 1];
+            int goalIndex = -1;
+            for (int i = 0; i < count && goalIndex < 0; i++) {
+                if (goals[i] == reached) {
+                    goalIndex = goalIndices[i];
+                }
+            }
+
+            PathBuffer path = map.toBuffer(indices, 0, indices.length);
+            PathBuffer keynodes = query.useKeynodes ? extractKeynodes(path) : new PathBuffer(0);
+            return new PathfindResponse(path, keynodes, search.getLastCost(), goalIndex);
+        });
+    }
+
+    /**
+     * Runs the queries back to back; the map's pooled search buffers are reused across them.
+     */
+    @Override
+    public List<PathfindResponse> pathfindBatch(List<PathQuery> queries) {
+        List<PathfindResponse> responses = new ArrayList<>(queries.size());
+        for (PathQuery query : queries) {
+            responses.add(pathfind(query, null));
+        }
+        return responses;
+    }
+
+    /**
+     * Run the body on the given map (or the current one) with a search of its own, holding the
+     * map so it can't be closed underneath the search.
+     */
+    private <T> T onMap(String mapId, BiFunction<ResidentMap, AStarSearch, T> body) {
+        try {
+            while (true) {
+                ResidentMap map = mapId != null ? acquire(mapId) : current;
+                if (map == null) {
+                    WieselClient.LOGGER.error("Pathfinding failed: {}", mapId != null
+                        ? "map '" + mapId + "' could not be loaded" : "no map loaded");
+                    return null;
+                }
+                map.lock.readLock().lock();
+                try {
+                    if (!map.closed) {
+                        AStarSearch search = map.borrowSearch();
+                        try {
+                            return body.apply(map, search);
+                        } finally {
+                            map.searches.push(search);
+                        }
+                    }
+                } finally {
+                    map.lock.readLock().unlock();
+                }
+                // Evicted between lookup and search; load it again
+            }
+        } finally {
+            if (mapId != null) {
+                List<ResidentMap> evicted;
+                synchronized (this) {
+                    evicted = evict(); // Only after the search: the queried map may be the one to go
+                }
+                close(evicted);
+            }
+        }
+    }
+
+    private PathfindResponse pathfind(ResidentMap map, AStarSearch search, PathQuery query, Consumer<PathBuffer> onSegment) {
+        int start = map.snap(query.startX, query.startY, query.startZ);
+        int goal = map.snap(query.endX, query.endY, query.endZ);
+        if (start < 0 || goal < 0) {
+            WieselClient.LOGGER.error("Pathfinding failed: {} is not near walkable ground", start < 0 ? "start" : "end");
+            return null;
+        }
+
+        float weight = query.isPerfectPath ? 1.0f : FAST_HEURISTIC_WEIGHT;
+        int[] indices = null;
+        PathBuffer streamed = new PathBuffer();
+        int[] lastStreamed = {-1};
+        if (!query.isPerfectPath && map.hierarchy != null && map.hierarchy.isLongRange(start, goal)) {
+            HierarchicalGraph.SegmentListener listener = onSegment == null ? null : (ids, from, to) -> {
+                PathBuffer segment = map.toBuffer(ids, from, to);
+                streamed.addAll(segment);
+                lastStreamed[0] = ids[to - 1];
+                onSegment.accept(segment);
+            };
+            indices = map.hierarchy.findPath(search, start, goal, weight, listener);
+        }
+
+        PathBuffer path;
+        if (indices != null) {
+            path = map.toBuffer(indices, 0, indices.length); // Already streamed in full
+        } else if (!streamed.isEmpty()) {
+            // Refinement failed after part of the route was sent; continue from its end, since the
+            // receiver already holds that part
+            int[] rest = search.search(lastStreamed[0], goal, weight);
+            if (rest == null) {
+                WieselClient.LOGGER.error("Pathfinding failed: no route found for {}", query);
+                return null;
+            }
+            PathBuffer remainder = map.toBuffer(rest, 1, rest.length);
+            if (!remainder.isEmpty()) {
+                onSegment.accept(remainder);
+            }
+            path = streamed;
+            path.addAll(remainder);
+        } else {
+            indices = search.search(start, goal, weight);
+            if (indices == null) {
+                WieselClient.LOGGER.error("Pathfinding failed: no route found for {}", query);
+                return null;
+            }
+            path = map.toBuffer(indices, 0, indices.length);
+            if (onSegment != null) {
+                onSegment.accept(path);
+            }
+        }
+
+        PathBuffer keynodes = query.useKeynodes ? extractKeynodes(path) : new PathBuffer(0);
+        return new PathfindResponse(path, keynodes);
+    }
+
+    /**
+     * @return the currently loaded map, or null
+     */
+    public VoxelMapStore getMapStore() {
+        ResidentMap map = current;
+        return map != null ? map.store : null;
+    }
+
+    @Override
+    public void shutdown() {
+        List<ResidentMap> maps;
+        synchronized (this) {
+            maps = new ArrayList<>(resident.values());
+            resident.clear();
+            current = null;
+        }
+        close(maps);
+    }
+
+    /**
+     * Keynodes are the endpoints plus every node where the direction of travel changes.
+     */
+    private static PathBuffer extractKeynodes(PathBuffer path) {
+        PathBuffer keynodes = new PathBuffer();
+        keynodes.add(path, 0);
+
+        for (int i = 1; i < path.size() - 1; i++) {
+            if (path.getX(i) - path.getX(i - 1) != path.getX(i + 1) - path.getX(i)
+                || path.getY(i) - path.getY(i - 1) != path.getY(i + 1) - path.getY(i)
+                || path.getZ(i) - path.getZ(i - 1) != path.getZ(i + 1) - path.getZ(i)) {
+                keynodes.add(path, i);
+            }
+        }
+
+        if (path.size() > 1) {
+            keynodes.add(path, path.size() - 1);
+        }
+        return keynodes;
+    }
+
+    /**
+     * A loaded map with a pool of search states; the store and hierarchy are read-only.
+     */
+    private static class ResidentMap {
+        final VoxelMapStore store;
+        final HierarchicalGraph hierarchy;
+        final long bytes;
+        // Searches are created on demand, so the pool grows to the number of concurrent queries
+        final ConcurrentLinkedDeque<AStarSearch> searches = new ConcurrentLinkedDeque<>();
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(); // Queries read, close writes
+        volatile boolean closed = false;
+
+        ResidentMap(VoxelMapStore store, HierarchicalGraph hierarchy) {
+            this.store = store;
+            this.hierarchy = hierarchy;
+            this.bytes = store.getMappedBytes() + (hierarchy != null ? hierarchy.getMemoryFootprint() : 0);
+        }
+
+        AStarSearch borrowSearch() {
+            AStarSearch search = searches.poll();
+            return search != null ? search : new AStarSearch(store);
+        }
+
+        int snap(double x, double y, double z) {
+            return store.findNearest((int) Math.floor(x), (int) Math.floor(y), (int) Math.floor(z),
+                SNAP_HORIZONTAL_RADIUS, SNAP_VERTICAL_RADIUS);
+        }
+
+        PathBuffer toBuffer(int[] ids, int from, int to) {
+            PathBuffer buffer = new PathBuffer(to - from);
+            for (int i = from; i < to; i++) {
+                int id = ids[i];
+                buffer.add(store.getX(id), store.getY(id), store.getZ(id),
+                    store.getTopBound(id), store.getPathWeight(id), store.isLiquid(id));
+            }
+            return buffer;
+        }
+
+        /**
+         * Waits for the queries running on this map to finish.
+         */
+        void close() {
+            lock.writeLock().lock();
+            try {
+                closed = true;
+                searches.clear();
+                store.close();
+            } catch (Exception e) {
+                WieselClient.LOGGER.warn("Failed to close map '{}'", store.getName(), e);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+}
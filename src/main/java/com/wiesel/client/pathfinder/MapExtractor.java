@@ -0,0 +1,213 @@
+package com.wiesel.client.pathfinder;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.wiesel.client.WieselClient;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Extracts map zips into maps/{name}/, driven by a manifest of what was extracted.
+ *
+ * - A map whose manifest matches the zip's size and modification time and is marked complete
+ *   is skipped without touching its files.
+ * - Entries are extracted in parallel straight from the zip's central directory.
+ * - Every file is written next to its target and renamed into place, so a file that exists
+ *   under its final name is always whole. An interrupted extraction of the same zip resumes
+ *   by skipping those files.
+ * - When the zip changes, the map is re-extracted and files it no longer contains are removed.
+ */
+public class MapExtractor {
+    public static final String MANIFEST_FILE = ".extract-manifest";
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final int COPY_BUFFER_SIZE = 1 << 16;
+    private static final String PART_SUFFIX = ".part";
+
+    private final ForkJoinPool pool;
+
+    public MapExtractor(int parallelism) {
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+    }
+
+    /**
+     * Extract a map zip if the extracted copy is missing, incomplete or out of date.
+     * @return true if the map is fully extracted afterwards
+     */
+    public boolean extract(File zipFile, File mapDir) {
+        String mapName = mapDir.getName();
+        long start = System.currentTimeMillis();
+
+        Manifest previous = readManifest(mapDir);
+        long zipSize = zipFile.length();
+        long zipModified = zipFile.lastModified();
+        if (previous != null && previous.complete && previous.zipSize == zipSize && previous.zipModified == zipModified) {
+            WieselClient.LOGGER.info("Map '{}' is up to date, skipping", mapName);
+            return true;
+        }
+
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            Manifest manifest = new Manifest();
+            manifest.zipSize = zipSize;
+            manifest.zipModified = zipModified;
+
+            Path root = mapDir.toPath().toAbsolutePath().normalize();
+            List<ZipEntry> files = new ArrayList<>();
+            for (Enumeration<? extends ZipEntry> it = zip.entries(); it.hasMoreElements(); ) {
+                ZipEntry entry = it.nextElement();
+                Path target = root.resolve(entry.getName()).normalize();
+                if (!target.startsWith(root)) {
+                    throw new IOException("Zip entry escapes the map directory: " + entry.getName());
+                }
+                if (entry.isDirectory()) {
+                    Files.createDirectories(target);
+                } else {
+                    files.add(entry);
+                    manifest.entries.put(entry.getName(), new ManifestEntry(entry.getSize(), entry.getCrc()));
+                }
+            }
+
+            // Files written by an unfinished run of this same zip are complete; anything else is redone
+            boolean resume = previous != null && previous.zipSize == zipSize && previous.zipModified == zipModified;
+            if (previous != null && !resume) {
+                removeStaleFiles(root, previous, manifest);
+            }
+
+            // Record the target before writing so an interrupted run can resume against it
+            Files.createDirectories(root);
+            writeManifest(mapDir, manifest);
+
+            AtomicInteger skipped = new AtomicInteger();
+            pool.submit(() -> files.parallelStream().forEach(entry -> {
+                Path target = root.resolve(entry.getName()).normalize();
+                try {
+                    if (resume && Files.isRegularFile(target) && Files.size(target) == entry.getSize()) {
+                        skipped.incrementAndGet();
+                        return;
+                    }
+                    extractEntry(zip, entry, target);
+                } catch (IOException e) {
+                    throw new ExtractionException(entry.getName(), e);
+                }
+            })).get();
+
+            manifest.complete = true;
+            writeManifest(mapDir, manifest);
+            WieselClient.LOGGER.info("Extracted map '{}': {} files ({} resumed) in {}ms",
+                mapName, files.size() - skipped.get(), skipped.get(), System.currentTimeMillis() - start);
+            return true;
+        } catch (ExecutionException e) {
+            WieselClient.LOGGER.error("Failed to extract map: {}", mapName, e.getCause());
+        } catch (Exception e) {
+            WieselClient.LOGGER.error("Failed to extract map: {}", mapName, e);
+        }
+        return false;
+    }
+
+    private static void extractEntry(ZipFile zip, ZipEntry entry, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path part = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+
+        CRC32 crc = new CRC32();
+        try (InputStream in = new CheckedInputStream(zip.getInputStream(entry), crc);
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(part), COPY_BUFFER_SIZE)) {
+            in.transferTo(out);
+        }
+
+        if (entry.getCrc() != -1 && crc.getValue() != entry.getCrc()) {
+            Files.deleteIfExists(part);
+            throw new IOException("CRC mismatch for " + entry.getName());
+        }
+        Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Delete files that an older version of the zip extracted but the new one no longer contains.
+     */
+    private static void removeStaleFiles(Path root, Manifest previous, Manifest current) throws IOException {
+        for (String name : previous.entries.keySet()) {
+            if (!current.entries.containsKey(name)) {
+                Path stale = root.resolve(name).normalize();
+                if (stale.startsWith(root)) {
+                    Files.deleteIfExists(stale);
+                }
+            }
+        }
+    }
+
+    private static Manifest readManifest(File mapDir) {
+        Path file = new File(mapDir, MANIFEST_FILE).toPath();
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            Manifest manifest = GSON.fromJson(reader, Manifest.class);
+            if (manifest != null && manifest.entries == null) {
+                manifest.entries = new LinkedHashMap<>();
+            }
+            return manifest;
+        } catch (Exception e) {
+            WieselClient.LOGGER.warn("Ignoring unreadable extraction manifest {}", file, e);
+            return null;
+        }
+    }
+
+    private static void writeManifest(File mapDir, Manifest manifest) throws IOException {
+        Path file = new File(mapDir, MANIFEST_FILE).toPath();
+        Path part = file.resolveSibling(MANIFEST_FILE + PART_SUFFIX);
+        try (Writer writer = Files.newBufferedWriter(part, StandardCharsets.UTF_8)) {
+            GSON.toJson(manifest, writer);
+        }
+        Files.move(part, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private static class Manifest {
+        long zipSize;
+        long zipModified;
+        boolean complete = false;
+        Map<String, ManifestEntry> entries = new LinkedHashMap<>();
+    }
+
+    private static class ManifestEntry {
+        long size;
+        long crc;
+
+        ManifestEntry(long size, long crc) {
+            this.size = size;
+            this.crc = crc;
+        }
+    }
+
+    private static class ExtractionException extends RuntimeException {
+        ExtractionException(String entry, IOException cause) {
+            super("Failed to extract " + entry, cause);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.wiesel.client.pathfinder;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * One published version of the active map. Every successful load publishes a new handle, even
+ * for the same map name, so a query can tell which version it ran against.
+ *
+ * Queries on a backend that holds a single map retain the handle while they run; a map swap
+ * retires the old handle first and waits for those queries to drain before switching.
+ */
+public final class MapHandle {
+    public final String name;
+    public final long version;
+
+    private int inFlight = 0;
+    private boolean retired = false;
+    private CompletableFuture<Void> drained = null;
+
+    MapHandle(String name, long version) {
+        this.name = name;
+        this.version = version;
+    }
+
+    /**
+     * Register a query running against this version.
+     * @return false if the handle is being replaced; the query has to wait for the next one
+     */
+    synchronized boolean retain() {
+        if (retired) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    synchronized void release() {
+        if (--inFlight == 0 && drained != null) {
+            drained.complete(null);
+        }
+    }
+
+    /**
+     * Stop accepting queries.
+     * @return completes once the queries still running have released the handle
+     */
+    synchronized CompletableFuture<Void> retire() {
+        retired = true;
+        if (drained == null) {
+            drained = new CompletableFuture<>();
+            if (inFlight == 0) {
+                drained.complete(null);
+            }
+        }
+        return drained;
+    }
+
+    @Override
+    public String toString() {
+        return name + "#" + version;
+    }
+}
@@ -0,0 +1,78 @@
+package com.wiesel.client.pathfinder;
+
+/**
+ * A query for the cheapest path from one start to any of several goals ("walk to the nearest
+ * of these ores"). Goals are stored as parallel coordinate arrays; the response's
+ * {@link PathfindResponse#goalIndex} says which one was reached.
+ */
+public class MultiGoalQuery {
+    public final double startX;
+    public final double startY;
+    public final double startZ;
+    private final double[] goalX;
+    private final double[] goalY;
+    private final double[] goalZ;
+    public final boolean useKeynodes;
+    public final boolean isPerfectPath;
+    public final String mapId; // Map to search; null for the current map
+
+    public MultiGoalQuery(double startX, double startY, double startZ, double[] goalX, double[] goalY, double[] goalZ,
+                          boolean useKeynodes, boolean isPerfectPath, String mapId) {
+        if (goalX.length != goalY.length || goalX.length != goalZ.length) {
+            throw new IllegalArgumentException("Goal coordinate arrays differ in length");
+        }
+        this.startX = startX;
+        this.startY = startY;
+        this.startZ = startZ;
+        this.goalX = goalX.clone();
+        this.goalY = goalY.clone();
+        this.goalZ = goalZ.clone();
+        this.useKeynodes = useKeynodes;
+        this.isPerfectPath = isPerfectPath;
+        this.mapId = mapId;
+    }
+
+    /**
+     * Query with the default flags (keynodes only).
+     */
+    public MultiGoalQuery(double startX, double startY, double startZ, double[] goalX, double[] goalY, double[] goalZ) {
+        this(startX, startY, startZ, goalX, goalY, goalZ, true, false, null);
+    }
+
+    public int getGoalCount() {
+        return goalX.length;
+    }
+
+    public double getGoalX(int index) {
+        return goalX[index];
+    }
+
+    public double getGoalY(int index) {
+        return goalY[index];
+    }
+
+    public double getGoalZ(int index) {
+        return goalZ[index];
+    }
+
+    /**
+     * @return the single-goal query for one of the goals, with the same flags
+     */
+    public PathQuery toQuery(int goalIndex) {
+        return new PathQuery(startX, startY, startZ, goalX[goalIndex], goalY[goalIndex], goalZ[goalIndex],
+            false, false, useKeynodes, false, isPerfectPath, mapId);
+    }
+
+    /**
+     * @return the same query against the given map
+     */
+    public MultiGoalQuery withMap(String mapId) {
+        return new MultiGoalQuery(startX, startY, startZ, goalX, goalY, goalZ, useKeynodes, isPerfectPath, mapId);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MultiGoalQuery(%.0f, %.0f, %.0f -> %d goals%s)", startX, startY, startZ, goalX.length,
+            mapId != null ? " on " + mapId : "");
+    }
+}
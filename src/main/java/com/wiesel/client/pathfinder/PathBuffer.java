@@ -0,0 +1,190 @@
+package com.wiesel.client.pathfinder;
+
+import com.wiesel.client.pathfinder.engine.AStarSearch;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Compact struct-of-arrays path storage.
+ * Hot-path consumers read coordinates through the primitive getters; {@link #asList()}
+ * offers a {@code List<PathNode>} view for code that still wants node objects.
+ */
+public class PathBuffer {
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private int size = 0;
+    private int[] xs;
+    private int[] ys;
+    private int[] zs;
+    private float[] topBounds;
+    private float[] pathWeights;
+    private final BitSet liquid = new BitSet();
+    private List<PathNode> listView = null;
+
+    public PathBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PathBuffer(int capacity) {
+        capacity = Math.max(capacity, 1);
+        xs = new int[capacity];
+        ys = new int[capacity];
+        zs = new int[capacity];
+        topBounds = new float[capacity];
+        pathWeights = new float[capacity];
+    }
+
+    public static PathBuffer fromNodes(List<PathNode> nodes) {
+        PathBuffer buffer = new PathBuffer(nodes.size());
+        for (PathNode node : nodes) {
+            buffer.add(node.x, node.y, node.z, node.topBound, node.pathWeight, node.isLiquid);
+        }
+        return buffer;
+    }
+
+    public void add(int x, int y, int z, float topBound, float pathWeight, boolean isLiquid) {
+        ensureCapacity(size + 1);
+        xs[size] = x;
+        ys[size] = y;
+        zs[size] = z;
+        topBounds[size] = topBound;
+        pathWeights[size] = pathWeight;
+        liquid.set(size, isLiquid);
+        size++;
+    }
+
+    /**
+     * Append the node at {@code index} of another buffer.
+     */
+    public void add(PathBuffer other, int index) {
+        add(other.xs[index], other.ys[index], other.zs[index],
+            other.topBounds[index], other.pathWeights[index], other.liquid.get(index));
+    }
+
+    /**
+     * Append every node of another buffer.
+     */
+    public void addAll(PathBuffer other) {
+        ensureCapacity(size + other.size);
+        for (int i = 0; i < other.size; i++) {
+            add(other, i);
+        }
+    }
+
+    /**
+     * Copy of this buffer with the nodes in {@code [from, to)} replaced by {@code replacement}.
+     * The receiver is left untouched, so cached buffers can be spliced safely.
+     */
+    public PathBuffer splice(int from, int to, PathBuffer replacement) {
+        PathBuffer result = new PathBuffer(size - (to - from) + replacement.size());
+        for (int i = 0; i < from; i++) {
+            result.add(this, i);
+        }
+        for (int i = 0; i < replacement.size(); i++) {
+            result.add(replacement, i);
+        }
+        for (int i = to; i < size; i++) {
+            result.add(this, i);
+        }
+        return result;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= xs.length) return;
+
+        int capacity = Math.max(required, xs.length * 2);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        zs = Arrays.copyOf(zs, capacity);
+        topBounds = Arrays.copyOf(topBounds, capacity);
+        pathWeights = Arrays.copyOf(pathWeights, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getX(int index) {
+        return xs[index];
+    }
+
+    public int getY(int index) {
+        return ys[index];
+    }
+
+    public int getZ(int index) {
+        return zs[index];
+    }
+
+    public float getTopBound(int index) {
+        return topBounds[index];
+    }
+
+    public float getPathWeight(int index) {
+        return pathWeights[index];
+    }
+
+    public boolean isLiquid(int index) {
+        return liquid.get(index);
+    }
+
+    /**
+     * Cost of walking the path in the engine's step costs, comparable with the costs the
+     * local backend reports. Steps between non-adjacent nodes count their octile distance.
+     */
+    public float getCost() {
+        float cost = 0;
+        for (int i = 1; i < size; i++) {
+            cost += AStarSearch.estimate(xs[i] - xs[i - 1], ys[i] - ys[i - 1], zs[i] - zs[i - 1]) + pathWeights[i];
+        }
+        return cost;
+    }
+
+    /**
+     * Approximate heap usage of this buffer in bytes (used for cache accounting).
+     */
+    public long getMemoryFootprint() {
+        // Five 4-byte arrays plus the liquid bits and object headers
+        return 5L * 4 * xs.length + liquid.size() / 8 + 128;
+    }
+
+    /**
+     * Materialize a single node object. Avoid in per-frame code.
+     */
+    public PathNode getNode(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        return new PathNode(xs[index], ys[index], zs[index], topBounds[index], pathWeights[index], liquid.get(index));
+    }
+
+    /**
+     * Read-only {@code List<PathNode>} view for compatibility. Nodes are created on access.
+     */
+    public List<PathNode> asList() {
+        if (listView == null) {
+            listView = new NodeListView();
+        }
+        return listView;
+    }
+
+    private class NodeListView extends AbstractList<PathNode> implements RandomAccess {
+        @Override
+        public PathNode get(int index) {
+            return getNode(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
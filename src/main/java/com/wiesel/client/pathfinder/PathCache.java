@@ -0,0 +1,278 @@
+package com.wiesel.client.pathfinder;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Bounded LRU cache of pathfind results, accounted by the memory of the cached path buffers.
+ *
+ * Entries are keyed by map, block-quantized start and end, and the query flags. A query
+ * whose start is not cached exactly can still be served from a cached path to the same goal
+ * that passes within {@code nearMissRadius} blocks of the start; the path is trimmed to
+ * begin at its closest node.
+ */
+public class PathCache {
+    private final long maxBytes;
+    private final int nearMissRadius;
+
+    private final LinkedHashMap<Key, PathfindResponse> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<GoalKey, Map<Key, PathfindResponse>> byGoal = new HashMap<>();
+    private long usedBytes = 0;
+
+    private long hits = 0;
+    private long nearMissHits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public PathCache(long maxBytes, int nearMissRadius) {
+        this.maxBytes = maxBytes;
+        this.nearMissRadius = nearMissRadius;
+    }
+
+    /**
+     * @return a cached (possibly trimmed) response, or null on a miss
+     */
+    public synchronized PathfindResponse get(String map, PathQuery query) {
+        Key key = new Key(map, query);
+        PathfindResponse exact = entries.get(key);
+        if (exact != null) {
+            hits++;
+            return exact;
+        }
+
+        PathfindResponse trimmed = findNearMiss(key, query);
+        if (trimmed != null) {
+            nearMissHits++;
+            return trimmed;
+        }
+
+        misses++;
+        return null;
+    }
+
+    public synchronized void put(String map, PathQuery query, PathfindResponse response) {
+        if (response == null || response.pathBuffer.isEmpty()) {
+            return;
+        }
+
+        long bytes = footprint(response);
+        if (bytes > maxBytes) {
+            return;
+        }
+
+        Key key = new Key(map, query);
+        PathfindResponse previous = entries.put(key, response);
+        if (previous != null) {
+            usedBytes -= footprint(previous);
+        }
+        usedBytes += bytes;
+        byGoal.computeIfAbsent(key.goal, g -> new HashMap<>()).put(key, response);
+
+        // Evict least recently used entries until we are back under budget
+        Iterator<Map.Entry<Key, PathfindResponse>> it = entries.entrySet().iterator();
+        while (usedBytes > maxBytes && it.hasNext()) {
+            Map.Entry<Key, PathfindResponse> eldest = it.next();
+            if (eldest.getKey().equals(key)) continue;
+
+            it.remove();
+            removeFromGoalIndex(eldest.getKey());
+            usedBytes -= footprint(eldest.getValue());
+            evictions++;
+        }
+    }
+
+    /**
+     * Drop every entry.
+     */
+    public synchronized void invalidate() {
+        entries.clear();
+        byGoal.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * Drop the entries of one map, e.g. when its contents were loaded again.
+     */
+    public synchronized void invalidate(String map) {
+        Iterator<Map.Entry<Key, PathfindResponse>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, PathfindResponse> entry = it.next();
+            if (Objects.equals(entry.getKey().goal.map, map)) {
+                it.remove();
+                removeFromGoalIndex(entry.getKey());
+                usedBytes -= footprint(entry.getValue());
+            }
+        }
+    }
+
+    private PathfindResponse findNearMiss(Key key, PathQuery query) {
+        Map<Key, PathfindResponse> candidates = byGoal.get(key.goal);
+        if (candidates == null) {
+            return null;
+        }
+
+        PathfindResponse bestResponse = null;
+        Key bestKey = null;
+        int bestIndex = -1;
+        double bestDistSq = (double) nearMissRadius * nearMissRadius;
+
+        // Scan through the goal index so LRU order is only touched for the entry we use
+        for (Map.Entry<Key, PathfindResponse> candidate : candidates.entrySet()) {
+            PathBuffer path = candidate.getValue().pathBuffer;
+            for (int i = 0; i < path.size(); i++) {
+                double dx = path.getX(i) + 0.5 - query.startX;
+                double dy = path.getY(i) - query.startY;
+                double dz = path.getZ(i) + 0.5 - query.startZ;
+                double distSq = dx * dx + dy * dy + dz * dz;
+                if (distSq <= bestDistSq) {
+                    bestDistSq = distSq;
+                    bestResponse = candidate.getValue();
+                    bestKey = candidate.getKey();
+                    bestIndex = i;
+                }
+            }
+        }
+
+        if (bestResponse == null) {
+            return null;
+        }
+
+        entries.get(bestKey); // Touch for LRU
+        return trim(bestResponse, bestIndex);
+    }
+
+    /**
+     * Copy of the response starting at {@code from}, keeping the keynodes that lie after it.
+     */
+    private static PathfindResponse trim(PathfindResponse response, int from) {
+        PathBuffer path = response.pathBuffer;
+        if (from == 0) {
+            return response;
+        }
+
+        PathBuffer trimmed = new PathBuffer(path.size() - from);
+        for (int i = from; i < path.size(); i++) {
+            trimmed.add(path, i);
+        }
+
+        // Keynodes are an ordered subset of the path; keep the ones at or after the trim point
+        PathBuffer keynodes = response.keynodeBuffer;
+        PathBuffer trimmedKeynodes = new PathBuffer(Math.max(1, keynodes.size()));
+        if (!keynodes.isEmpty()) {
+            trimmedKeynodes.add(trimmed, 0);
+        }
+        int k = 0;
+        for (int i = 0; i < path.size() && k < keynodes.size(); i++) {
+            if (path.getX(i) == keynodes.getX(k) && path.getY(i) == keynodes.getY(k) && path.getZ(i) == keynodes.getZ(k)) {
+                if (i > from) {
+                    trimmedKeynodes.add(keynodes, k);
+                }
+                k++;
+            }
+        }
+
+        return new PathfindResponse(trimmed, trimmedKeynodes);
+    }
+
+    private void removeFromGoalIndex(Key key) {
+        Map<Key, PathfindResponse> keys = byGoal.get(key.goal);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                byGoal.remove(key.goal);
+            }
+        }
+    }
+
+    private static long footprint(PathfindResponse response) {
+        return response.pathBuffer.getMemoryFootprint() + response.keynodeBuffer.getMemoryFootprint();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getNearMissHits() {
+        return nearMissHits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Map, quantized end and flags: everything except the start.
+     */
+    private static final class GoalKey {
+        final String map;
+        final long end;
+        final int flags;
+
+        GoalKey(String map, PathQuery query) {
+            this.map = map;
+            this.end = quantize(query.endX, query.endY, query.endZ);
+            this.flags = (query.useWarpPoints ? 1 : 0)
+                | (query.useEtherwarp ? 2 : 0)
+                | (query.useKeynodes ? 4 : 0)
+                | (query.useSpline ? 8 : 0)
+                | (query.isPerfectPath ? 16 : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof GoalKey)) return false;
+            GoalKey other = (GoalKey) o;
+            return end == other.end && flags == other.flags && Objects.equals(map, other.map);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(map, end, flags);
+        }
+    }
+
+    private static final class Key {
+        final GoalKey goal;
+        final long start;
+
+        Key(String map, PathQuery query) {
+            this.goal = new GoalKey(map, query);
+            this.start = quantize(query.startX, query.startY, query.startZ);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return start == other.start && goal.equals(other.goal);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * goal.hashCode() + Long.hashCode(start);
+        }
+    }
+
+    private static long quantize(double x, double y, double z) {
+        // The same blocks the pathfinder receives for the query
+        long bx = PathQuery.toBlock(x);
+        long by = PathQuery.toBlock(y);
+        long bz = PathQuery.toBlock(z);
+        return (bx & 0x3FFFFFFL) << 38 | (bz & 0x3FFFFFFL) << 12 | (by & 0xFFFL);
+    }
+}
@@ -0,0 +1,105 @@
+package com.wiesel.client.pathfinder;
+
+import java.util.Objects;
+
+/**
+ * A single pathfinding request: start and end position plus the query flags
+ * understood by every {@link PathfindingBackend}.
+ */
+public class PathQuery {
+    public final double startX;
+    public final double startY;
+    public final double startZ;
+    public final double endX;
+    public final double endY;
+    public final double endZ;
+    public final boolean useWarpPoints;
+    public final boolean useEtherwarp;
+    public final boolean useKeynodes;
+    public final boolean useSpline;
+    public final boolean isPerfectPath;
+    public final String mapId; // Map to search; null for the current map
+
+    public PathQuery(double startX, double startY, double startZ, double endX, double endY, double endZ,
+                     boolean useWarpPoints, boolean useEtherwarp, boolean useKeynodes,
+                     boolean useSpline, boolean isPerfectPath) {
+        this(startX, startY, startZ, endX, endY, endZ, useWarpPoints, useEtherwarp, useKeynodes, useSpline, isPerfectPath, null);
+    }
+
+    public PathQuery(double startX, double startY, double startZ, double endX, double endY, double endZ,
+                     boolean useWarpPoints, boolean useEtherwarp, boolean useKeynodes,
+                     boolean useSpline, boolean isPerfectPath, String mapId) {
+        this.startX = startX;
+        this.startY = startY;
+        this.startZ = startZ;
+        this.endX = endX;
+        this.endY = endY;
+        this.endZ = endZ;
+        this.useWarpPoints = useWarpPoints;
+        this.useEtherwarp = useEtherwarp;
+        this.useKeynodes = useKeynodes;
+        this.useSpline = useSpline;
+        this.isPerfectPath = isPerfectPath;
+        this.mapId = mapId;
+    }
+
+    /**
+     * Query with the default flags (keynodes only).
+     */
+    public PathQuery(double startX, double startY, double startZ, double endX, double endY, double endZ) {
+        this(startX, startY, startZ, endX, endY, endZ, false, false, true, false, false);
+    }
+
+    /**
+     * The block coordinate the pathfinder receives for a position, rounded half away from zero
+     * (x = -2.5 becomes -3). Every transport and every query comparison quantizes through this,
+     * so the same query resolves to the same blocks however it is sent.
+     */
+    public static int toBlock(double coordinate) {
+        return (int) (coordinate < 0 ? -Math.round(-coordinate) : Math.round(coordinate));
+    }
+
+    /**
+     * @return the same query against the given map
+     */
+    public PathQuery withMap(String mapId) {
+        return new PathQuery(startX, startY, startZ, endX, endY, endZ,
+            useWarpPoints, useEtherwarp, useKeynodes, useSpline, isPerfectPath, mapId);
+    }
+
+    /**
+     * Queries are equal when they resolve to the same block positions and flags,
+     * which is what the pathfinder actually receives.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PathQuery)) return false;
+        PathQuery other = (PathQuery) o;
+        return toBlock(startX) == toBlock(other.startX)
+            && toBlock(startY) == toBlock(other.startY)
+            && toBlock(startZ) == toBlock(other.startZ)
+            && toBlock(endX) == toBlock(other.endX)
+            && toBlock(endY) == toBlock(other.endY)
+            && toBlock(endZ) == toBlock(other.endZ)
+            && useWarpPoints == other.useWarpPoints
+            && useEtherwarp == other.useEtherwarp
+            && useKeynodes == other.useKeynodes
+            && useSpline == other.useSpline
+            && isPerfectPath == other.isPerfectPath
+            && Objects.equals(mapId, other.mapId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(toBlock(startX), toBlock(startY), toBlock(startZ),
+            toBlock(endX), toBlock(endY), toBlock(endZ),
+            useWarpPoints, useEtherwarp, useKeynodes, useSpline, isPerfectPath, mapId);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PathQuery(%.0f, %.0f, %.0f -> %.0f, %.0f, %.0f%s)", startX, startY, startZ, endX, endY, endZ,
+            mapId != null ? " on " + mapId : "");
+    }
+}
@@ -0,0 +1,150 @@
+package com.wiesel.client.pathfinder;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single-pass streaming decoder for pathfind responses.
+ * Nodes are written straight into {@link PathBuffer}s without building a JSON tree.
+ */
+public class PathResponseDecoder {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    public static PathfindResponse decode(Reader in) throws IOException {
+        try (JsonReader reader = new JsonReader(in)) {
+            PathfindResponse response = readResponse(reader);
+            if (response == null) {
+                throw new IOException("Pathfind response is missing 'path'");
+            }
+            return response;
+        }
+    }
+
+    /**
+     * Decode a batch response, {"results": [...]} with one pathfind response (or {"error": "..."})
+     * per query.
+     * @return one response per result, null for the failed ones
+     */
+    public static List<PathfindResponse> decodeBatch(Reader in) throws IOException {
+        List<PathfindResponse> results = null;
+        try (JsonReader reader = new JsonReader(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("results")) {
+                    reader.skipValue();
+                    continue;
+                }
+                results = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    results.add(readResponse(reader));
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        }
+
+        if (results == null) {
+            throw new IOException("Batch response is missing 'results'");
+        }
+        return results;
+    }
+
+    /**
+     * @return the response object at the reader's position, or null if it has no path (an error entry)
+     */
+    private static PathfindResponse readResponse(JsonReader reader) throws IOException {
+        PathBuffer path = null;
+        PathBuffer keynodes = null;
+        float cost = Float.NaN;
+        int goalIndex = -1;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "path": path = readNodes(reader); break;
+                case "keynodes": keynodes = readNodes(reader); break;
+                case "cost": cost = (float) reader.nextDouble(); break;
+                case "goal_index": goalIndex = reader.nextInt(); break;
+                default: reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+
+        if (path == null) {
+            return null;
+        }
+        return new PathfindResponse(path, keynodes != null ? keynodes : new PathBuffer(0), cost, goalIndex);
+    }
+
+    /**
+     * Decode one line of a newline-delimited streaming response.
+     */
+    public static StreamChunk decodeChunk(String line) throws IOException {
+        StreamChunk chunk = new StreamChunk();
+        try (JsonReader reader = new JsonReader(new StringReader(line))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "path": chunk.path = readNodes(reader); break;
+                    case "keynodes": chunk.keynodes = readNodes(reader); break;
+                    case "done": chunk.done = reader.nextBoolean(); break;
+                    case "error": chunk.error = reader.nextString(); break;
+                    default: reader.skipValue(); break;
+                }
+            }
+            reader.endObject();
+        }
+        return chunk;
+    }
+
+    private static PathBuffer readNodes(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return new PathBuffer(0);
+        }
+
+        PathBuffer nodes = new PathBuffer(INITIAL_CAPACITY);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            int x = 0, y = 0, z = 0;
+            float topBound = 0, pathWeight = 0;
+            boolean isLiquid = false;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "x": x = reader.nextInt(); break;
+                    case "y": y = reader.nextInt(); break;
+                    case "z": z = reader.nextInt(); break;
+                    case "top_bound": topBound = (float) reader.nextDouble(); break;
+                    case "path_weight": pathWeight = (float) reader.nextDouble(); break;
+                    case "is_liquid": isLiquid = reader.nextBoolean(); break;
+                    default: reader.skipValue(); break;
+                }
+            }
+            reader.endObject();
+
+            nodes.add(x, y, z, topBound, pathWeight, isLiquid);
+        }
+        reader.endArray();
+        return nodes;
+    }
+
+    /**
+     * One line of a streaming response: a path segment, the final line ({@code done} with the
+     * keynodes), or an error.
+     */
+    public static class StreamChunk {
+        public PathBuffer path = null;
+        public PathBuffer keynodes = null;
+        public boolean done = false;
+        public String error = null;
+    }
+}
@@ -0,0 +1,137 @@
+package com.wiesel.client.pathfinder;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the segments of a path, for finding the segment nearest to the player
+ * without scanning the path.
+ *
+ * Segment i runs from node i - 1 to node i (the same numbering as the node being walked to).
+ * Every segment is listed in each horizontal cell its bounding box touches; a cell's segments
+ * form a linked list through {@link #next}, so appending nodes never moves existing entries.
+ */
+public class PathSegmentIndex {
+    private static final int CELL_SHIFT = 3; // 8x8 block cells
+
+    private final Long2IntOpenHashMap cellHeads = new Long2IntOpenHashMap();
+    private int[] segment = new int[256];
+    private int[] next = new int[256];
+    private int entries = 0;
+    private int indexedNodes = 0;
+
+    private PathBuffer path;
+
+    // Result of the last query
+    private int nearestSegment = -1;
+    private double nearestDistanceSq = Double.MAX_VALUE;
+
+    public PathSegmentIndex() {
+        cellHeads.defaultReturnValue(-1);
+    }
+
+    /**
+     * Index a whole path, discarding the previous one.
+     */
+    public void build(PathBuffer path) {
+        cellHeads.clear();
+        entries = 0;
+        indexedNodes = 0;
+        this.path = path;
+        extend(path);
+    }
+
+    /**
+     * Index the segments of nodes appended since the last call.
+     */
+    public void extend(PathBuffer path) {
+        this.path = path;
+        for (int i = Math.max(1, indexedNodes); i < path.size(); i++) {
+            int minX = Math.min(path.getX(i - 1), path.getX(i)) >> CELL_SHIFT;
+            int maxX = Math.max(path.getX(i - 1), path.getX(i)) >> CELL_SHIFT;
+            int minZ = Math.min(path.getZ(i - 1), path.getZ(i)) >> CELL_SHIFT;
+            int maxZ = Math.max(path.getZ(i - 1), path.getZ(i)) >> CELL_SHIFT;
+            for (int cx = minX; cx <= maxX; cx++) {
+                for (int cz = minZ; cz <= maxZ; cz++) {
+                    insert(cellKey(cx, cz), i);
+                }
+            }
+        }
+        indexedNodes = path.size();
+    }
+
+    private void insert(long key, int segmentIndex) {
+        if (entries == segment.length) {
+            segment = Arrays.copyOf(segment, entries * 2);
+            next = Arrays.copyOf(next, entries * 2);
+        }
+        segment[entries] = segmentIndex;
+        next[entries] = cellHeads.get(key);
+        cellHeads.put(key, entries);
+        entries++;
+    }
+
+    /**
+     * Find the segment nearest to a point among segments from..to (inclusive) within a radius.
+     * Node coordinates are taken at the block centre, like the walker's targets.
+     * @return the segment index (the node it leads to), or -1 if none is in range
+     */
+    public int findNearest(double x, double y, double z, int from, int to, double radius) {
+        nearestSegment = -1;
+        nearestDistanceSq = radius * radius;
+        if (path == null || indexedNodes < 2) {
+            return -1;
+        }
+
+        from = Math.max(1, from);
+        to = Math.min(indexedNodes - 1, to);
+        int minX = (int) Math.floor(x - radius) >> CELL_SHIFT;
+        int maxX = (int) Math.floor(x + radius) >> CELL_SHIFT;
+        int minZ = (int) Math.floor(z - radius) >> CELL_SHIFT;
+        int maxZ = (int) Math.floor(z + radius) >> CELL_SHIFT;
+
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cz = minZ; cz <= maxZ; cz++) {
+                for (int e = cellHeads.get(cellKey(cx, cz)); e != -1; e = next[e]) {
+                    int s = segment[e];
+                    if (s < from || s > to) {
+                        continue;
+                    }
+                    double distanceSq = distanceSqToSegment(x, y, z, s);
+                    // Ties go to the later segment: the player is past the shared node
+                    if (distanceSq < nearestDistanceSq || (distanceSq == nearestDistanceSq && s > nearestSegment)) {
+                        nearestDistanceSq = distanceSq;
+                        nearestSegment = s;
+                    }
+                }
+            }
+        }
+        return nearestSegment;
+    }
+
+    /**
+     * @return distance to the segment found by the last {@link #findNearest} call
+     */
+    public double getNearestDistance() {
+        return Math.sqrt(nearestDistanceSq);
+    }
+
+    /**
+     * Squared distance from a point to segment s (node s - 1 to node s).
+     */
+    public double distanceSqToSegment(double x, double y, double z, int s) {
+        double ax = path.getX(s - 1) + 0.5, ay = path.getY(s - 1), az = path.getZ(s - 1) + 0.5;
+        double abx = path.getX(s) + 0.5 - ax, aby = path.getY(s) - ay, abz = path.getZ(s) + 0.5 - az;
+        double apx = x - ax, apy = y - ay, apz = z - az;
+
+        double lengthSq = abx * abx + aby * aby + abz * abz;
+        double t = lengthSq == 0 ? 0 : Math.max(0, Math.min(1, (apx * abx + apy * aby + apz * abz) / lengthSq));
+        double dx = apx - abx * t, dy = apy - aby * t, dz = apz - abz * t;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static long cellKey(int cx, int cz) {
+        return (long) cx << 32 | (cz & 0xFFFFFFFFL);
+    }
+}
@@ -1,34 +1,138 @@
 package com.wiesel.client.pathfinder;
 
 import com.wiesel.client.WieselClient;
+import com.wiesel.client.config.ConfigManager;
+import com.wiesel.client.config.WieselConfig;
 import com.wiesel.client.rotation.RotationManager;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.network.ClientPlayerEntity;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.World;
 
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+/**
+ * Walks the player along a path.
+ *
+ * When the player is knocked off course, stops making progress, or a node ahead becomes
+ * blocked, only the affected stretch is replanned: a short query from the player to a node
+ * a little past the problem, spliced into the remaining route. The rest of the previous
+ * plan is kept, so repair cost grows with the size of the detour, not the route length.
+ *
+ * Every tick the player is projected onto the nearest path segment near the current node
+ * (through a {@link PathSegmentIndex}), so being pushed ahead or knocked back moves the
+ * current node instead of sending the player back to a stale one.
+ *
+ * A path can also be walked while it is still being computed: after {@link #beginStreaming()},
+ * the walk starts with the first segment and later segments are appended to it.
+ */
 public class PathWalker {
-    private static List<PathNode> currentPath = null;
+    private static PathBuffer currentPath = null;
     private static int currentNodeIndex = 0;
     private static boolean isWalking = false;
     private static final double REACH_THRESHOLD = 1.0; // Distance to consider node reached
     private static final RotationManager rotationManager = new RotationManager();
+    private static final PathSegmentIndex segmentIndex = new PathSegmentIndex();
+
+    // Resync
+    private static final int RESYNC_BEHIND = 32;         // Nodes behind the current one that may be snapped back to
+    private static final int RESYNC_AHEAD = 128;         // Nodes ahead that may be skipped to
+    private static final double RESYNC_HYSTERESIS = 0.5; // Blocks closer than the current segment before switching
+
+    // Replanning
+    private static final int BLOCK_CHECK_NODES = 6;      // How far ahead to look for blocked nodes
+    private static final int STUCK_TICKS = 40;           // 2 seconds without getting closer to the next node
+    private static final int REPAIR_WINDOW = 12;         // Rejoin the old path this many nodes past the problem
+    private static final int MAX_REPAIR_FAILURES = 3;    // Each failure doubles the window before giving up
+    private static final long REPAIR_COOLDOWN_MS = 1000;
+
+    private static int pathVersion = 0;
+    private static CompletableFuture<PathfindResponse> repairInFlight = null;
+    private static long lastRepairTime = 0;
+    private static int failedRepairs = 0;
+    private static double bestDistance = Double.MAX_VALUE;
+    private static int ticksWithoutProgress = 0;
+
+    // Streaming
+    private static boolean streaming = false;
+    private static long streamStartTime = 0;
+    private static long lastTimeToFirstStepMs = -1;
 
     public static void startWalking(PathfindResponse path) {
-        if (path == null || path.path == null || path.path.isEmpty()) {
+        if (path == null || path.pathBuffer == null || path.pathBuffer.isEmpty()) {
             WieselClient.LOGGER.warn("Cannot start walking: invalid path");
             return;
         }
 
-        currentPath = path.path;
+        resetReplanning();
+        streaming = false;
+        currentPath = path.pathBuffer;
         currentNodeIndex = 0;
         isWalking = true;
-        rotationManager.setPath(path.path);
+        segmentIndex.build(currentPath);
+        rotationManager.setPath(path.pathBuffer);
         WieselClient.LOGGER.info("Started walking path with {} nodes", currentPath.size());
     }
 
+    /**
+     * Prepare for a path that arrives in segments; the walk starts with the first one.
+     */
+    public static void beginStreaming() {
+        if (isWalking) {
+            stopWalking();
+        }
+        resetReplanning();
+        currentPath = null;
+        currentNodeIndex = 0;
+        streaming = true;
+        streamStartTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Append the next segment of a streamed path, starting the walk if this is the first one.
+     */
+    public static void appendSegment(PathBuffer segment) {
+        if (!streaming || segment == null || segment.isEmpty()) {
+            return;
+        }
+
+        if (currentPath == null) {
+            // Own copy: segments are appended to it and may come from the path cache
+            PathBuffer path = new PathBuffer(Math.max(64, segment.size()));
+            path.addAll(segment);
+            currentPath = path;
+            currentNodeIndex = 0;
+            isWalking = true;
+            segmentIndex.build(path);
+            rotationManager.setPath(path);
+
+            lastTimeToFirstStepMs = System.currentTimeMillis() - streamStartTime;
+            WieselClient.LOGGER.info("Started walking after {}ms with the first {} nodes", lastTimeToFirstStepMs, path.size());
+            return;
+        }
+
+        int firstNewIndex = currentPath.size();
+        currentPath.addAll(segment);
+        segmentIndex.extend(currentPath);
+        rotationManager.appendPath(currentPath, firstNewIndex);
+        WieselClient.LOGGER.debug("Appended {} nodes to the path ({} total)", segment.size(), currentPath.size());
+    }
+
+    /**
+     * No more segments will arrive; the walk ends at the end of what has been received.
+     */
+    public static void finishStreaming() {
+        if (streaming && currentPath != null) {
+            WieselClient.LOGGER.info("Streamed path complete: {} nodes, first step after {}ms",
+                currentPath.size(), lastTimeToFirstStepMs);
+        }
+        streaming = false;
+    }
+
     public static void stopWalking() {
+        resetReplanning();
+        streaming = false;
         isWalking = false;
         currentPath = null;
         currentNodeIndex = 0;
@@ -51,14 +155,17 @@ public class PathWalker {
 
         // Check if we've reached the end
         if (currentNodeIndex >= currentPath.size()) {
+            if (streaming) {
+                return; // Wait for the next segment
+            }
             WieselClient.LOGGER.info("Reached end of path");
             stopWalking();
             return;
         }
 
-        PathNode targetNode = currentPath.get(currentNodeIndex);
         Vec3d playerPos = player.getPos();
-        Vec3d targetPos = new Vec3d(targetNode.x + 0.5, targetNode.y, targetNode.z + 0.5);
+        resync(playerPos);
+        Vec3d targetPos = nodeCenter(currentNodeIndex);
 
         double distance = playerPos.distanceTo(targetPos);
 
@@ -66,16 +173,23 @@ public class PathWalker {
         if (distance < REACH_THRESHOLD) {
             currentNodeIndex++;
             rotationManager.setCurrentNodeIndex(currentNodeIndex);
+            bestDistance = Double.MAX_VALUE;
+            ticksWithoutProgress = 0;
             if (currentNodeIndex < currentPath.size()) {
                 WieselClient.LOGGER.debug("Reached node {}/{}", currentNodeIndex, currentPath.size());
-                targetNode = currentPath.get(currentNodeIndex);
-                targetPos = new Vec3d(targetNode.x + 0.5, targetNode.y, targetNode.z + 0.5);
+                targetPos = nodeCenter(currentNodeIndex);
+            } else if (streaming) {
+                return; // Wait for the next segment
             } else {
                 stopWalking();
                 return;
             }
         }
 
+        if (ConfigManager.getConfig().pathfinder.replanning) {
+            checkForRepair(mc, playerPos, distance);
+        }
+
         // Rotation is handled by RotationManager in the render event
         // Move forward
         player.input.pressingForward = true;
@@ -87,6 +201,196 @@ public class PathWalker {
         }
     }
 
+    private static void checkForRepair(MinecraftClient mc, Vec3d playerPos, double distance) {
+        if (distance < bestDistance - 0.05) {
+            bestDistance = distance;
+            ticksWithoutProgress = 0;
+        } else {
+            ticksWithoutProgress++;
+        }
+
+        if (repairInFlight != null || System.currentTimeMillis() - lastRepairTime < REPAIR_COOLDOWN_MS) {
+            return;
+        }
+
+        int problem = findProblem(mc.world, playerPos);
+        if (problem >= 0) {
+            requestRepair(mc, playerPos, problem);
+        }
+    }
+
+    /**
+     * Move the current node to the segment the player is actually on, if that is clearly
+     * closer than the segment being walked.
+     */
+    private static void resync(Vec3d playerPos) {
+        double radius = ConfigManager.getConfig().pathfinder.deviationThreshold;
+        int nearest = segmentIndex.findNearest(playerPos.x, playerPos.y, playerPos.z,
+            currentNodeIndex - RESYNC_BEHIND, currentNodeIndex + RESYNC_AHEAD, radius);
+        if (nearest < 0 || nearest == currentNodeIndex) {
+            return;
+        }
+
+        double nearestDistance = segmentIndex.getNearestDistance();
+        if (nearestDistance + RESYNC_HYSTERESIS >= distanceToCurrentSegment(playerPos)) {
+            return;
+        }
+
+        WieselClient.LOGGER.debug("Resynced from node {} to {} ({} blocks off the path)",
+            currentNodeIndex, nearest, String.format("%.2f", nearestDistance));
+        currentNodeIndex = nearest;
+        rotationManager.setCurrentNodeIndex(currentNodeIndex);
+        bestDistance = Double.MAX_VALUE;
+        ticksWithoutProgress = 0;
+    }
+
+    /**
+     * @return the index of the first node the current route can't be trusted to reach, or -1
+     */
+    private static int findProblem(World world, Vec3d playerPos) {
+        WieselConfig.PathfinderSettings settings = ConfigManager.getConfig().pathfinder;
+
+        if (distanceToCurrentSegment(playerPos) > settings.deviationThreshold) {
+            WieselClient.LOGGER.debug("Deviated from path near node {}", currentNodeIndex);
+            return currentNodeIndex;
+        }
+
+        if (world != null) {
+            int end = Math.min(currentPath.size(), currentNodeIndex + BLOCK_CHECK_NODES);
+            for (int i = currentNodeIndex; i < end; i++) {
+                if (isBlocked(world, i)) {
+                    WieselClient.LOGGER.debug("Path blocked at node {}", i);
+                    return i;
+                }
+            }
+        }
+
+        if (ticksWithoutProgress > STUCK_TICKS) {
+            WieselClient.LOGGER.debug("No progress towards node {}", currentNodeIndex);
+            return currentNodeIndex;
+        }
+        return -1;
+    }
+
+    /**
+     * Query a detour from the player to a node past the problem; the rest of the route is kept.
+     */
+    private static void requestRepair(MinecraftClient mc, Vec3d playerPos, int problem) {
+        int window = REPAIR_WINDOW << failedRepairs;
+        int rejoin = Math.min(problem + window, currentPath.size() - 1);
+        while (rejoin < currentPath.size() - 1 && mc.world != null && isBlocked(mc.world, rejoin)) {
+            rejoin++;
+        }
+
+        PathQuery query = new PathQuery(playerPos.x, playerPos.y, playerPos.z,
+            currentPath.getX(rejoin) + 0.5, currentPath.getY(rejoin), currentPath.getZ(rejoin) + 0.5,
+            false, false, false, false, false);
+
+        int version = pathVersion;
+        int from = currentNodeIndex;
+        int to = rejoin + 1;
+        long start = System.currentTimeMillis();
+        lastRepairTime = start;
+
+        CompletableFuture<PathfindResponse> future = PathfinderManager.pathfindAsync(query, false);
+        repairInFlight = future;
+        future.whenComplete((response, error) -> mc.execute(() -> {
+            if (version != pathVersion || !isWalking) {
+                return; // The walk was stopped or replaced while the repair was running
+            }
+            repairInFlight = null;
+
+            if (error != null || response == null || response.pathBuffer.isEmpty()) {
+                onRepairFailed(error);
+                return;
+            }
+            applyRepair(from, to, response.pathBuffer, System.currentTimeMillis() - start);
+        }));
+    }
+
+    private static void applyRepair(int from, int to, PathBuffer detour, long latencyMs) {
+        // The player kept walking while the repair ran; drop it if they are past the stretch it
+        // replaces or no longer near where it starts
+        MinecraftClient mc = MinecraftClient.getInstance();
+        double threshold = ConfigManager.getConfig().pathfinder.deviationThreshold;
+        if (mc.player == null) {
+            return;
+        }
+        Vec3d playerPos = mc.player.getPos();
+        Vec3d detourStart = new Vec3d(detour.getX(0) + 0.5, detour.getY(0), detour.getZ(0) + 0.5);
+        if (currentNodeIndex >= to || playerPos.distanceTo(detourStart) > threshold) {
+            WieselClient.LOGGER.debug("Dropped replan of nodes {}-{}, the player moved on", from, to - 1);
+            return;
+        }
+
+        int replaceFrom = Math.min(from, currentNodeIndex);
+        currentPath = currentPath.splice(replaceFrom, to, detour);
+        segmentIndex.build(currentPath);
+
+        // Continue from the detour segment the player is on
+        int nearest = segmentIndex.findNearest(playerPos.x, playerPos.y, playerPos.z,
+            replaceFrom, replaceFrom + detour.size(), threshold);
+        currentNodeIndex = nearest >= 0 ? nearest : replaceFrom;
+        pathVersion++;
+        failedRepairs = 0;
+        bestDistance = Double.MAX_VALUE;
+        ticksWithoutProgress = 0;
+
+        rotationManager.updatePath(currentPath, currentNodeIndex);
+        PathfinderManager.onPathRepaired(currentPath);
+        WieselClient.LOGGER.info("Replanned nodes {}-{} with {} nodes in {}ms", from, to - 1, detour.size(), latencyMs);
+    }
+
+    private static void onRepairFailed(Throwable error) {
+        failedRepairs++;
+        if (failedRepairs > MAX_REPAIR_FAILURES) {
+            WieselClient.LOGGER.warn("Could not replan around the obstacle, stopping", error);
+            stopWalking();
+            return;
+        }
+        WieselClient.LOGGER.debug("Replan attempt {} failed, widening the repair window", failedRepairs);
+    }
+
+    private static void resetReplanning() {
+        pathVersion++;
+        if (repairInFlight != null) {
+            repairInFlight.cancel(false);
+            repairInFlight = null;
+        }
+        failedRepairs = 0;
+        bestDistance = Double.MAX_VALUE;
+        ticksWithoutProgress = 0;
+    }
+
+    /**
+     * A node is blocked once a solid block occupies the space the player needs to stand in.
+     */
+    private static boolean isBlocked(World world, int index) {
+        BlockPos feet = new BlockPos(currentPath.getX(index), currentPath.getY(index), currentPath.getZ(index));
+        BlockPos head = feet.up();
+        return world.getBlockState(feet).isSolidBlock(world, feet) || world.getBlockState(head).isSolidBlock(world, head);
+    }
+
+    /**
+     * Distance from the player to the segment leading to the current node.
+     */
+    private static double distanceToCurrentSegment(Vec3d playerPos) {
+        Vec3d b = nodeCenter(currentNodeIndex);
+        if (currentNodeIndex == 0) {
+            return playerPos.distanceTo(b);
+        }
+
+        Vec3d a = nodeCenter(currentNodeIndex - 1);
+        Vec3d ab = b.subtract(a);
+        double lengthSq = ab.lengthSquared();
+        double t = lengthSq == 0 ? 0 : Math.max(0, Math.min(1, playerPos.subtract(a).dotProduct(ab) / lengthSq));
+        return playerPos.distanceTo(a.add(ab.multiply(t)));
+    }
+
+    private static Vec3d nodeCenter(int index) {
+        return new Vec3d(currentPath.getX(index) + 0.5, currentPath.getY(index), currentPath.getZ(index) + 0.5);
+    }
+
     public static RotationManager getRotationManager() {
         return rotationManager;
     }
@@ -99,6 +403,17 @@ public class PathWalker {
         return currentNodeIndex;
     }
 
+    /**
+     * @return milliseconds from the last streamed query to the first step, or -1
+     */
+    public static long getLastTimeToFirstStepMs() {
+        return lastTimeToFirstStepMs;
+    }
+
+    public static boolean isStreaming() {
+        return streaming;
+    }
+
     public static int getTotalNodes() {
         return currentPath != null ? currentPath.size() : 0;
     }
@@ -0,0 +1,140 @@
+package com.wiesel.client.pathfinder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encoding for the binary pathfinder protocol.
+ *
+ * Every frame is a 4 byte big-endian payload length followed by the payload, whose first
+ * byte is the frame type. Integers are zigzag varints. Node lists are sent as a varint count
+ * followed by, per node, a flag byte and the coordinate deltas to the previous node; topBound
+ * and pathWeight are only present when their flag bit is set.
+ */
+public class PathWireCodec {
+    public static final int PROTOCOL_VERSION = 1;
+
+    public static final byte FRAME_HELLO = 0x01;
+    public static final byte FRAME_LOAD_MAP = 0x10;
+    public static final byte FRAME_PATHFIND = 0x11;
+    public static final byte FRAME_OK = 0x20;
+    public static final byte FRAME_PATH = 0x21;
+    public static final byte FRAME_ERROR = 0x7F;
+
+    public static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    private static final int NODE_LIQUID = 1;
+    private static final int NODE_TOP_BOUND = 1 << 1;
+    private static final int NODE_PATH_WEIGHT = 1 << 2;
+
+    private static final int QUERY_WARP_POINTS = 1;
+    private static final int QUERY_ETHERWARP = 1 << 1;
+    private static final int QUERY_KEYNODES = 1 << 2;
+    private static final int QUERY_SPLINE = 1 << 3;
+    private static final int QUERY_PERFECT_PATH = 1 << 4;
+
+    public static ByteBuffer encodeHello() {
+        ByteBuffer buf = ByteBuffer.allocate(16);
+        buf.put(FRAME_HELLO);
+        putVarInt(buf, PROTOCOL_VERSION);
+        return buf.flip();
+    }
+
+    public static ByteBuffer encodeLoadMap(String mapName) {
+        byte[] name = mapName.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(1 + 5 + name.length);
+        buf.put(FRAME_LOAD_MAP);
+        putVarInt(buf, name.length);
+        buf.put(name);
+        return buf.flip();
+    }
+
+    public static ByteBuffer encodePathfind(PathQuery query) {
+        ByteBuffer buf = ByteBuffer.allocate(1 + 6 * 5 + 1);
+        buf.put(FRAME_PATHFIND);
+        putSignedVarInt(buf, PathQuery.toBlock(query.startX));
+        putSignedVarInt(buf, PathQuery.toBlock(query.startY));
+        putSignedVarInt(buf, PathQuery.toBlock(query.startZ));
+        putSignedVarInt(buf, PathQuery.toBlock(query.endX));
+        putSignedVarInt(buf, PathQuery.toBlock(query.endY));
+        putSignedVarInt(buf, PathQuery.toBlock(query.endZ));
+
+        int flags = 0;
+        if (query.useWarpPoints) flags |= QUERY_WARP_POINTS;
+        if (query.useEtherwarp) flags |= QUERY_ETHERWARP;
+        if (query.useKeynodes) flags |= QUERY_KEYNODES;
+        if (query.useSpline) flags |= QUERY_SPLINE;
+        if (query.isPerfectPath) flags |= QUERY_PERFECT_PATH;
+        buf.put((byte) flags);
+        return buf.flip();
+    }
+
+    /**
+     * Decode the payload of a {@link #FRAME_PATH} frame (positioned after the type byte).
+     */
+    public static PathfindResponse decodePath(ByteBuffer buf) throws IOException {
+        PathBuffer path = decodeNodes(buf);
+        PathBuffer keynodes = decodeNodes(buf);
+        return new PathfindResponse(path, keynodes);
+    }
+
+    private static PathBuffer decodeNodes(ByteBuffer buf) throws IOException {
+        int count = getVarInt(buf);
+        if (count < 0 || count > buf.remaining()) {
+            throw new IOException("Invalid node count: " + count);
+        }
+
+        PathBuffer nodes = new PathBuffer(count);
+        int x = 0, y = 0, z = 0;
+        for (int i = 0; i < count; i++) {
+            int flags = buf.get();
+            x += getSignedVarInt(buf);
+            y += getSignedVarInt(buf);
+            z += getSignedVarInt(buf);
+            float topBound = (flags & NODE_TOP_BOUND) != 0 ? buf.getFloat() : 0;
+            float pathWeight = (flags & NODE_PATH_WEIGHT) != 0 ? buf.getFloat() : 0;
+            nodes.add(x, y, z, topBound, pathWeight, (flags & NODE_LIQUID) != 0);
+        }
+        return nodes;
+    }
+
+    public static String decodeString(ByteBuffer buf) throws IOException {
+        int length = getVarInt(buf);
+        if (length < 0 || length > buf.remaining()) {
+            throw new IOException("Invalid string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void putVarInt(ByteBuffer buf, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    public static void putSignedVarInt(ByteBuffer buf, int value) {
+        putVarInt(buf, (value << 1) ^ (value >> 31));
+    }
+
+    public static int getVarInt(ByteBuffer buf) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buf.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("VarInt too long");
+    }
+
+    public static int getSignedVarInt(ByteBuffer buf) throws IOException {
+        int raw = getVarInt(buf);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+}
@@ -3,11 +3,44 @@ package com.wiesel.client.pathfinder;
 import java.util.List;
 
 public class PathfindResponse {
-    public List<PathNode> path;
-    public List<PathNode> keynodes;
+    public final PathBuffer pathBuffer;
+    public final PathBuffer keynodeBuffer;
+
+    // List views over the buffers, kept for compatibility
+    public final List<PathNode> path;
+    public final List<PathNode> keynodes;
+
+    public final float cost;     // Path cost in the engine's step costs; NaN if the backend didn't report it
+    public final int goalIndex;  // Goal reached by a multi-goal query, or -1
+
+    public PathfindResponse(PathBuffer path, PathBuffer keynodes) {
+        this(path, keynodes, Float.NaN, -1);
+    }
+
+    public PathfindResponse(PathBuffer path, PathBuffer keynodes, float cost, int goalIndex) {
+        this.pathBuffer = path;
+        this.keynodeBuffer = keynodes;
+        this.path = path.asList();
+        this.keynodes = keynodes.asList();
+        this.cost = cost;
+        this.goalIndex = goalIndex;
+    }
 
     public PathfindResponse(List<PathNode> path, List<PathNode> keynodes) {
-        this.path = path;
-        this.keynodes = keynodes;
+        this(PathBuffer.fromNodes(path), PathBuffer.fromNodes(keynodes));
+    }
+
+    /**
+     * @return the reported cost, or the cost of walking the path if none was reported
+     */
+    public float getCost() {
+        return Float.isNaN(cost) ? pathBuffer.getCost() : cost;
+    }
+
+    /**
+     * @return this response as the answer to goal {@code goalIndex} of a multi-goal query
+     */
+    public PathfindResponse forGoal(int goalIndex) {
+        return new PathfindResponse(pathBuffer, keynodeBuffer, cost, goalIndex);
     }
 }
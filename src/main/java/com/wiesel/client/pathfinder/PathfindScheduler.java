@@ -0,0 +1,147 @@
+package com.wiesel.client.pathfinder;
+
+import com.wiesel.client.WieselClient;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Dispatches asynchronous pathfind queries to the active backend.
+ *
+ * - Identical queries that are queued or running share one backend request.
+ * - At most {@code maxInFlight} requests run at once; the rest wait in FIFO order.
+ * - Every request is bounded by a timeout.
+ * - A query is only aborted once every caller waiting on it has cancelled.
+ */
+class PathfindScheduler {
+    private final Supplier<PathfindingBackend> backend;
+    private final Executor executor;
+    private final int maxInFlight;
+    private final long timeoutMs;
+
+    private final Object lock = new Object();
+    private final Map<PathQuery, Request> requests = new HashMap<>();
+    private final ArrayDeque<Request> queue = new ArrayDeque<>();
+    private int running = 0;
+
+    PathfindScheduler(Supplier<PathfindingBackend> backend, Executor executor, int maxInFlight, long timeoutMs) {
+        this.backend = backend;
+        this.executor = executor;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Submit a query.
+     * @return a future owned by this caller; cancelling it does not affect other callers
+     */
+    CompletableFuture<PathfindResponse> submit(PathQuery query) {
+        Request request;
+        synchronized (lock) {
+            request = requests.get(query);
+            if (request == null) {
+                request = new Request(query);
+                requests.put(query, request);
+                queue.addLast(request);
+            }
+            request.subscribers++;
+        }
+        dispatch();
+
+        Request shared = request;
+        CompletableFuture<PathfindResponse> view = shared.result.copy();
+        view.whenComplete((response, error) -> {
+            if (view.isCancelled()) {
+                unsubscribe(shared);
+            }
+        });
+        return view;
+    }
+
+    private void unsubscribe(Request request) {
+        CompletableFuture<PathfindResponse> toCancel = null;
+        synchronized (lock) {
+            if (--request.subscribers > 0 || request.result.isDone()) {
+                return;
+            }
+            requests.remove(request.query, request);
+            queue.remove(request);
+            toCancel = request.backendFuture;
+        }
+
+        if (toCancel != null) {
+            toCancel.cancel(true);
+        }
+        request.result.cancel(false);
+        WieselClient.LOGGER.debug("Cancelled superseded pathfind query {}", request.query);
+    }
+
+    private void dispatch() {
+        while (true) {
+            Request next;
+            synchronized (lock) {
+                if (running >= maxInFlight || queue.isEmpty()) {
+                    return;
+                }
+                next = queue.pollFirst();
+                running++;
+            }
+            start(next);
+        }
+    }
+
+    private void start(Request request) {
+        CompletableFuture<PathfindResponse> future;
+        try {
+            future = backend.get().pathfindAsync(request.query, executor);
+        } catch (Exception e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        synchronized (lock) {
+            request.backendFuture = future;
+        }
+        if (request.result.isCancelled()) {
+            // Every caller gave up while the request was being started
+            future.cancel(true);
+        }
+
+        CompletableFuture<PathfindResponse> backendFuture = future;
+        future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS).whenComplete((response, error) -> {
+            if (error instanceof TimeoutException) {
+                WieselClient.LOGGER.warn("Pathfind query timed out after {}ms: {}", timeoutMs, request.query);
+                backendFuture.cancel(true);
+            }
+
+            synchronized (lock) {
+                running--;
+                requests.remove(request.query, request);
+            }
+
+            if (error == null) {
+                request.result.complete(response);
+            } else if (!(error instanceof CancellationException)) {
+                request.result.completeExceptionally(error);
+            }
+            dispatch();
+        });
+    }
+
+    private static class Request {
+        final PathQuery query;
+        final CompletableFuture<PathfindResponse> result = new CompletableFuture<>();
+        CompletableFuture<PathfindResponse> backendFuture = null;
+        int subscribers = 0;
+
+        Request(PathQuery query) {
+            this.query = query;
+        }
+    }
+}
@@ -1,63 +1,159 @@
 package com.wiesel.client.pathfinder;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
 import com.wiesel.client.WieselClient;
 import com.wiesel.client.config.ConfigManager;
+import com.wiesel.client.config.WieselConfig;
+import com.wiesel.client.rotation.BlockTransparency;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class PathfinderManager {
     private static final String API_URL = "http://localhost:3000";
-    private static final Gson GSON = new Gson();
     private static final HttpClient HTTP_CLIENT = HttpClient.newHttpClient();
 
-    private static Process pathfinderProcess = null;
+    private static PathfinderSupervisor supervisor = null;
     private static Timer keepaliveTimer = null;
-    private static String currentMap = null;
     private static PathfindResponse lastPath = null;
+    private static PathfindingBackend backend = new HttpPathfindingBackend(API_URL, HTTP_CLIENT);
+
+    private static final ExecutorService PATHFIND_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "WieselPathfinding");
+        t.setDaemon(true);
+        return t;
+    });
+    // Map loads, swaps and preloads all run here, one at a time, whoever requested them
+    static final ScheduledExecutorService MAP_EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "WieselMapLoader");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final AtomicReference<MapHandle> activeMap = new AtomicReference<>();
+    private static final AtomicLong mapVersion = new AtomicLong();
+    private static final ConcurrentHashMap<String, CompletableFuture<MapHandle>> pendingLoads = new ConcurrentHashMap<>();
+    private static volatile CompletableFuture<MapHandle> swapInProgress = null;
+    // Maps bundled as zips in Downloads; each future completes once its extraction has ended
+    private static final List<String> BUNDLED_MAPS = List.of("hub", "mines", "galatea");
+    private static final ConcurrentHashMap<String, CompletableFuture<Void>> extractions = new ConcurrentHashMap<>();
+
+    // Replaced when their settings change; see applyConfig
+    private static volatile PathfindScheduler scheduler = createScheduler();
+    private static final AtomicReference<CompletableFuture<PathfindResponse>> latestQuery = new AtomicReference<>();
+    private static volatile PathCache pathCache = createPathCache();
+    private static WieselConfig.PathfinderSettings appliedSettings = null;
 
     public static void initialize() {
-        // Extract maps in background thread to avoid blocking
+        backend = createBackend(ConfigManager.getConfig().pathfinder.backend);
+        scheduler = createScheduler();
+        pathCache = createPathCache();
+        WieselClient.LOGGER.info("Using '{}' pathfinding backend", backend.getName());
+        ConfigManager.subscribe(PathfinderManager::applyConfig);
+
+        // Extract maps in background thread to avoid blocking; loads of a map wait for its extraction
+        for (String mapName : BUNDLED_MAPS) {
+            extractions.putIfAbsent(mapName, new CompletableFuture<>());
+        }
         new Thread(() -> {
             try {
                 extractMapsIfNeeded();
             } catch (Exception e) {
                 WieselClient.LOGGER.error("Error extracting maps", e);
+            } finally {
+                extractions.values().forEach(extraction -> extraction.complete(null));
             }
         }, "WieselMapExtractor").start();
 
-        // Start pathfinder process
-        new Thread(() -> {
-            try {
-                Thread.sleep(1000); // Wait a moment for maps to start extracting
-                startPathfinder();
-            } catch (Exception e) {
-                WieselClient.LOGGER.error("Error starting pathfinder", e);
-            }
-        }, "WieselPathfinderStarter").start();
+        // The external process and its keepalive are only needed for the HTTP/binary backends
+        if (backend instanceof LocalPathfindingBackend) {
+            return;
+        }
+
+        // Start pathfinder process; it loads maps on request, so it needn't wait for the extraction
+        startPathfinder();
 
         // Start keepalive timer
         startKeepaliveTimer();
     }
 
+    private static PathfindingBackend createBackend(String name) {
+        if ("local".equalsIgnoreCase(name)) {
+            return new LocalPathfindingBackend(new File(ConfigManager.getMinecraftDir(), "maps"),
+                ConfigManager.getConfig().pathfinder.hierarchicalSearch,
+                ConfigManager.getConfig().pathfinder.mapMemoryBudgetMb * 1024L * 1024L);
+        }
+        if (!"http".equalsIgnoreCase(name)) {
+            WieselClient.LOGGER.warn("Unknown pathfinding backend '{}', falling back to http", name);
+        }
+        if (ConfigManager.getConfig().pathfinder.binaryProtocol) {
+            return new BinaryPathfindingBackend(API_URL, HTTP_CLIENT, ConfigManager.getConfig().pathfinder.queryTimeoutMs);
+        }
+        return new HttpPathfindingBackend(API_URL, HTTP_CLIENT);
+    }
+
+    /**
+     * Rebuild the scheduler, path cache and keepalive timer when their settings change. The
+     * backend and the external process are chosen once, so changes to them wait for a restart.
+     */
+    private static synchronized void applyConfig(WieselConfig config) {
+        WieselConfig.PathfinderSettings previous = appliedSettings;
+        WieselConfig.PathfinderSettings next = config.pathfinder;
+        appliedSettings = next;
+        if (previous == null) {
+            return;
+        }
+
+        if (next.maxInFlightQueries != previous.maxInFlightQueries || next.queryTimeoutMs != previous.queryTimeoutMs) {
+            // Queries already submitted finish on the old scheduler
+            scheduler = createScheduler();
+            if (backend instanceof BinaryPathfindingBackend binary) {
+                binary.setTimeoutMs(next.queryTimeoutMs);
+            }
+            WieselClient.LOGGER.info("Pathfind queries now limited to {} in flight, {}ms each",
+                next.maxInFlightQueries, next.queryTimeoutMs);
+        }
+        if (next.pathCacheSizeMb != previous.pathCacheSizeMb || next.pathCacheNearMissRadius != previous.pathCacheNearMissRadius) {
+            pathCache = createPathCache();
+            WieselClient.LOGGER.info("Path cache rebuilt with {}MB", next.pathCacheSizeMb);
+        }
+        if (next.keepaliveInterval != previous.keepaliveInterval && keepaliveTimer != null) {
+            startKeepaliveTimer();
+        }
+        if (!Objects.equals(next.backend, previous.backend) || next.binaryProtocol != previous.binaryProtocol
+                || next.hierarchicalSearch != previous.hierarchicalSearch || next.mapMemoryBudgetMb != previous.mapMemoryBudgetMb
+                || next.startupTimeoutMs != previous.startupTimeoutMs) {
+            WieselClient.LOGGER.warn("Pathfinder backend settings changed; they take effect after a restart");
+        }
+    }
+
+    private static PathfindScheduler createScheduler() {
+        WieselConfig.PathfinderSettings settings = ConfigManager.getConfig().pathfinder;
+        return new PathfindScheduler(() -> backend, PATHFIND_EXECUTOR, settings.maxInFlightQueries, settings.queryTimeoutMs);
+    }
+
+    private static PathCache createPathCache() {
+        WieselConfig.PathfinderSettings settings = ConfigManager.getConfig().pathfinder;
+        return new PathCache(settings.pathCacheSizeMb * 1024L * 1024L, settings.pathCacheNearMissRadius);
+    }
+
     private static void extractMapsIfNeeded() {
         File mapsDir = new File(ConfigManager.getMinecraftDir(), "maps");
         if (!mapsDir.exists()) {
@@ -68,14 +164,23 @@ public class PathfinderManager {
         WieselClient.LOGGER.info("Starting map extraction from Downloads folder...");
 
         // Extract bundled maps
-        extractMapFromDownloads("hub.zip", mapsDir);
-        extractMapFromDownloads("mines.zip", mapsDir);
-        extractMapFromDownloads("galatea.zip", mapsDir);
+        MapExtractor extractor = new MapExtractor(Runtime.getRuntime().availableProcessors());
+        try {
+            for (String mapName : BUNDLED_MAPS) {
+                try {
+                    extractMapFromDownloads(extractor, mapName + ".zip", mapsDir);
+                } finally {
+                    extractions.get(mapName).complete(null);
+                }
+            }
+        } finally {
+            extractor.shutdown();
+        }
 
         WieselClient.LOGGER.info("Map extraction completed");
     }
 
-    private static void extractMapFromDownloads(String zipName, File targetDir) {
+    private static void extractMapFromDownloads(MapExtractor extractor, String zipName, File targetDir) {
         File downloadsDir = new File(System.getProperty("user.home"), "Downloads");
         File zipFile = new File(downloadsDir, zipName);
 
@@ -85,67 +190,36 @@ public class PathfinderManager {
         }
 
         String mapName = zipName.replace(".zip", "");
-        File mapDir = new File(targetDir, mapName);
-
-        if (mapDir.exists() && mapDir.listFiles() != null && mapDir.listFiles().length > 0) {
-            WieselClient.LOGGER.info("Map '{}' already extracted, skipping", mapName);
-            return;
-        }
-
-        try {
-            mapDir.mkdirs();
-            unzip(zipFile, mapDir);
-            WieselClient.LOGGER.info("Extracted map '{}' to {}", mapName, mapDir.getAbsolutePath());
-        } catch (Exception e) {
-            WieselClient.LOGGER.error("Failed to extract map: {}", zipName, e);
-        }
+        extractor.extract(zipFile, new File(targetDir, mapName));
     }
 
-    private static void unzip(File zipFile, File targetDir) throws IOException {
-        try (ZipInputStream zis = new ZipInputStream(Files.newInputStream(zipFile.toPath()))) {
-            ZipEntry entry;
-            while ((entry = zis.getNextEntry()) != null) {
-                File file = new File(targetDir, entry.getName());
-                if (entry.isDirectory()) {
-                    file.mkdirs();
-                } else {
-                    file.getParentFile().mkdirs();
-                    try (FileOutputStream fos = new FileOutputStream(file)) {
-                        byte[] buffer = new byte[4096];
-                        int len;
-                        while ((len = zis.read(buffer)) > 0) {
-                            fos.write(buffer, 0, len);
-                        }
-                    }
-                }
-                zis.closeEntry();
-            }
+    /**
+     * Block until the bundled map of that name has been extracted, so nothing reads a
+     * half-written map directory. Returns at once for maps that aren't bundled or are done.
+     */
+    static void awaitExtraction(String mapName) {
+        CompletableFuture<Void> extraction = extractions.get(mapName);
+        if (extraction != null && !extraction.isDone()) {
+            WieselClient.LOGGER.info("Waiting for map '{}' to be extracted", mapName);
+            extraction.join();
         }
     }
 
     public static void startPathfinder() {
-        if (pathfinderProcess != null && pathfinderProcess.isAlive()) {
+        if (supervisor != null) {
             WieselClient.LOGGER.info("Pathfinder already running");
             return;
         }
+        supervisor = new PathfinderSupervisor(API_URL, HTTP_CLIENT, ConfigManager.getMinecraftDir(),
+            ConfigManager.getConfig().pathfinder.startupTimeoutMs);
+        supervisor.start();
+    }
 
-        File pathfinderExe = new File(System.getProperty("user.home"), "Downloads/Pathfinding.exe");
-        if (!pathfinderExe.exists()) {
-            WieselClient.LOGGER.error("Pathfinder executable not found at: {}", pathfinderExe.getAbsolutePath());
-            return;
-        }
-
-        try {
-            ProcessBuilder pb = new ProcessBuilder(pathfinderExe.getAbsolutePath());
-            pb.directory(new File(ConfigManager.getMinecraftDir(), "maps").getParentFile());
-            pathfinderProcess = pb.start();
-            WieselClient.LOGGER.info("Started pathfinder process");
-
-            // Wait a bit for the server to start
-            Thread.sleep(2000);
-        } catch (Exception e) {
-            WieselClient.LOGGER.error("Failed to start pathfinder", e);
-        }
+    /**
+     * @return the external pathfinder's state; STOPPED if the backend doesn't use it
+     */
+    public static PathfinderSupervisor.State getPathfinderState() {
+        return supervisor != null ? supervisor.getState() : PathfinderSupervisor.State.STOPPED;
     }
 
     private static void startKeepaliveTimer() {
@@ -159,7 +233,7 @@ public class PathfinderManager {
             public void run() {
                 sendKeepalive();
             }
-        }, 5000, 60000); // Start after 5s, repeat every 60s
+        }, 5000, ConfigManager.getConfig().pathfinder.keepaliveInterval);
     }
 
     private static void sendKeepalive() {
@@ -170,97 +244,456 @@ public class PathfinderManager {
                 .build();
 
             HTTP_CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-                .thenAccept(response -> {
-                    if (response.statusCode() == 200) {
+                .whenComplete((response, error) -> {
+                    boolean answered = error == null && response.statusCode() == 200;
+                    if (answered) {
                         WieselClient.LOGGER.debug("Keepalive sent successfully");
                     }
+                    if (supervisor != null) {
+                        supervisor.onKeepalive(answered);
+                    }
                 });
         } catch (Exception e) {
             WieselClient.LOGGER.error("Failed to send keepalive", e);
         }
     }
 
+    /**
+     * Blocking map load. Must not be called from the map loading thread; prefer
+     * {@link #loadMapAsync(String)}.
+     */
     public static boolean loadMap(String mapName) {
         try {
-            HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(API_URL + "/api/loadmap?map=" + mapName))
-                .GET()
-                .build();
+            return loadMapAsync(mapName).get() != null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            return false;
+        }
+    }
 
-            HttpResponse<String> response = HTTP_CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
+    /**
+     * Load a map on the map loading thread and publish it as the active map once it is ready.
+     * Requests for a map that is already active or loading share that load.
+     * @return the new map handle; fails if the map can't be loaded
+     */
+    public static CompletableFuture<MapHandle> loadMapAsync(String mapName) {
+        MapHandle active = activeMap.get();
+        if (active != null && active.name.equals(mapName) && swapInProgress == null) {
+            return CompletableFuture.completedFuture(active);
+        }
 
-            if (response.statusCode() == 200) {
-                currentMap = mapName;
-                WieselClient.LOGGER.info("Loaded map: {}", mapName);
-                return true;
-            } else {
-                WieselClient.LOGGER.error("Failed to load map '{}': {}", mapName, response.body());
-                return false;
+        CompletableFuture<MapHandle> created = new CompletableFuture<>();
+        CompletableFuture<MapHandle> load = pendingLoads.putIfAbsent(mapName, created);
+        if (load != null) {
+            return load;
+        }
+        MAP_EXECUTOR.execute(() -> swapMap(mapName, created));
+        return created;
+    }
+
+    /**
+     * Runs on the map loading thread. The new map is built completely before it is published.
+     * A backend holding several maps builds it next to the active one, so queries keep running
+     * meanwhile. A backend holding a single map can only swap in place: queries started on the
+     * old version finish first, and queries arriving during the swap wait for the new version.
+     */
+    private static void swapMap(String mapName, CompletableFuture<MapHandle> load) {
+        long start = System.currentTimeMillis();
+        MapHandle previous = activeMap.get();
+        boolean inPlace = !backend.supportsResidentMaps();
+        boolean wasResident = !inPlace && backend.isResident(mapName);
+        boolean loaded = false;
+        swapInProgress = load;
+        try {
+            if (inPlace && previous != null) {
+                drain(previous);
             }
+            // Right after launch the first load waits for the process instead of failing
+            if (supervisor != null && !supervisor.awaitReady()) {
+                WieselClient.LOGGER.warn("Pathfinder not ready ({}), trying to load map {} anyway",
+                    supervisor.getState(), mapName);
+            }
+            loaded = backend.loadMap(mapName);
         } catch (Exception e) {
-            WieselClient.LOGGER.error("Failed to load map: {}", mapName, e);
-            return false;
+            WieselClient.LOGGER.error("Error loading map {}", mapName, e);
+        }
+
+        MapHandle published = null;
+        if (loaded) {
+            BlockTransparency.loadMapOverrides(new File(new File(ConfigManager.getMinecraftDir(), "maps"), mapName));
+            if (!wasResident) {
+                // Cached paths are per map; only this map's may have been computed on other contents
+                pathCache.invalidate(mapName);
+            }
+            published = new MapHandle(mapName, mapVersion.incrementAndGet());
+            activeMap.set(published);
+            WieselClient.LOGGER.info("Loaded map: {} in {}ms", published, System.currentTimeMillis() - start);
+        } else if (inPlace && previous != null) {
+            // The old map was retired for the swap; it is still what the backend has
+            activeMap.set(new MapHandle(previous.name, mapVersion.incrementAndGet()));
         }
+
+        swapInProgress = null;
+        pendingLoads.remove(mapName, load);
+        if (published != null) {
+            load.complete(published);
+        } else {
+            load.completeExceptionally(new IllegalStateException("Failed to load map " + mapName));
+        }
+    }
+
+    /**
+     * Retire the handle and wait for the queries running on it, at most one query timeout.
+     */
+    private static void drain(MapHandle handle) throws InterruptedException {
+        long timeoutMs = ConfigManager.getConfig().pathfinder.queryTimeoutMs;
+        try {
+            handle.retire().get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            WieselClient.LOGGER.warn("Queries on map {} still running after {}ms, swapping anyway", handle, timeoutMs);
+        } catch (ExecutionException e) {
+            // Never completed exceptionally
+        }
+    }
+
+    /**
+     * Load a map in the background without switching to it. Only backends keeping several
+     * maps resident support this (see {@link PathfindingBackend#supportsResidentMaps()}).
+     * @return true if the map is resident afterwards
+     */
+    public static boolean preloadMap(String mapName) {
+        return backend.preloadMap(mapName);
     }
 
     public static PathfindResponse pathfind(double x1, double y1, double z1, double x2, double y2, double z2) {
-        return pathfind(x1, y1, z1, x2, y2, z2, false, false, true, false, false);
+        return pathfind(new PathQuery(x1, y1, z1, x2, y2, z2));
     }
 
     public static PathfindResponse pathfind(double x1, double y1, double z1, double x2, double y2, double z2,
                                            boolean useWarpPoints, boolean useEtherwarp, boolean useKeynodes,
                                            boolean useSpline, boolean isPerfectPath) {
+        return pathfind(new PathQuery(x1, y1, z1, x2, y2, z2,
+            useWarpPoints, useEtherwarp, useKeynodes, useSpline, isPerfectPath));
+    }
+
+    /**
+     * Blocking pathfind. Prefer {@link #pathfindAsync(PathQuery)} off the pathfinding threads.
+     */
+    public static PathfindResponse pathfind(PathQuery query) {
         try {
-            JsonObject requestBody = new JsonObject();
-            requestBody.addProperty("start", String.format("%.0f,%.0f,%.0f", x1, y1, z1));
-            requestBody.addProperty("end", String.format("%.0f,%.0f,%.0f", x2, y2, z2));
-            requestBody.addProperty("use_warp_points", useWarpPoints);
-            requestBody.addProperty("use_etherwarp", useEtherwarp);
-            requestBody.addProperty("use_keynodes", useKeynodes);
-            requestBody.addProperty("use_spline", useSpline);
-            requestBody.addProperty("is_perfect_path", isPerfectPath);
+            PathfindResponse response = pathfindAsync(query, false).get();
+            if (response != null) {
+                onPathFound(response);
+            }
+            return response;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            WieselClient.LOGGER.error("Failed to pathfind", e.getCause() != null ? e.getCause() : e);
+            return null;
+        }
+    }
 
-            HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(API_URL + "/api/pathfind"))
-                .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(GSON.toJson(requestBody)))
-                .build();
+    /**
+     * Blocking pathfind on the given map instead of the current one.
+     */
+    public static PathfindResponse pathfind(String mapId, PathQuery query) {
+        return pathfind(query.withMap(mapId));
+    }
 
-            HttpResponse<String> response = HTTP_CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
+    /**
+     * Pathfind without blocking on the given map instead of the current one.
+     */
+    public static CompletableFuture<PathfindResponse> pathfindAsync(String mapId, PathQuery query) {
+        return pathfindAsync(query.withMap(mapId));
+    }
 
-            if (response.statusCode() == 200) {
-                JsonObject json = GSON.fromJson(response.body(), JsonObject.class);
+    /**
+     * Pathfind without blocking. The new query supersedes the previous one started through this
+     * method: the older future is cancelled, and only the latest result becomes {@link #getLastPath()}.
+     */
+    public static CompletableFuture<PathfindResponse> pathfindAsync(PathQuery query) {
+        return pathfindAsync(query, true);
+    }
 
-                List<PathNode> path = parseNodes(json.getAsJsonArray("path"));
-                List<PathNode> keynodes = parseNodes(json.getAsJsonArray("keynodes"));
+    /**
+     * Pathfind without blocking.
+     * @param supersede whether this query replaces (and cancels) the previous superseding query
+     */
+    public static CompletableFuture<PathfindResponse> pathfindAsync(PathQuery query, boolean supersede) {
+        CompletableFuture<PathfindResponse> future = lookup(query);
+        if (!supersede) {
+            return future;
+        }
+
+        CompletableFuture<PathfindResponse> previous = latestQuery.getAndSet(future);
+        if (previous != null) {
+            previous.cancel(false);
+        }
 
-                lastPath = new PathfindResponse(path, keynodes);
-                WieselClient.LOGGER.info("Pathfinding successful: {} nodes, {} keynodes", path.size(), keynodes.size());
-                return lastPath;
-            } else {
-                WieselClient.LOGGER.error("Pathfinding failed: {}", response.body());
-                return null;
+        future.whenComplete((response, error) -> {
+            if (error != null) {
+                if (!future.isCancelled()) {
+                    WieselClient.LOGGER.error("Failed to pathfind", error);
+                }
+            } else if (response != null && isLatest(future)) {
+                onPathFound(response);
             }
-        } catch (Exception e) {
-            WieselClient.LOGGER.error("Failed to pathfind", e);
-            return null;
+        });
+        return future;
+    }
+
+    /**
+     * Pathfind without blocking, receiving the path in segments as soon as they are final (see
+     * {@link PathfindingBackend#pathfindStreaming}). Like {@link #pathfindAsync(PathQuery)}, the
+     * query supersedes the previous one; segments stop arriving once it has been superseded.
+     * Streaming queries bypass the scheduler's queue: they are user-initiated and at most one is
+     * current at a time.
+     * @param onSegment called from a pathfinding thread for every new segment
+     */
+    public static CompletableFuture<PathfindResponse> pathfindStreaming(PathQuery query, Consumer<PathBuffer> onSegment) {
+        CompletableFuture<PathfindResponse> result = new CompletableFuture<>();
+        CompletableFuture<PathfindResponse> previous = latestQuery.getAndSet(result);
+        if (previous != null) {
+            previous.cancel(false);
         }
+
+        result.whenComplete((response, error) -> {
+            if (error != null) {
+                if (!result.isCancelled()) {
+                    WieselClient.LOGGER.error("Failed to pathfind", error);
+                }
+            } else if (response != null && isLatest(result)) {
+                onPathFound(response);
+            }
+        });
+
+        String map = mapOf(query);
+        PathfindResponse cached = pathCache.get(map, query);
+        if (cached != null) {
+            onSegment.accept(cached.pathBuffer);
+            result.complete(cached);
+            return result;
+        }
+
+        Consumer<PathBuffer> forward = segment -> {
+            if (!result.isDone() && isLatest(result)) {
+                onSegment.accept(segment);
+            }
+        };
+        CompletableFuture<PathfindResponse> running = onMap(query.mapId,
+            mapId -> backend.pathfindStreaming(query.withMap(mapId), PATHFIND_EXECUTOR, forward));
+        long timeoutMs = ConfigManager.getConfig().pathfinder.queryTimeoutMs;
+        running.orTimeout(timeoutMs, TimeUnit.MILLISECONDS).whenComplete((response, error) -> {
+            if (error != null) {
+                running.cancel(true);
+                result.completeExceptionally(error);
+                return;
+            }
+            if (response != null) {
+                pathCache.put(map, query, response);
+            }
+            result.complete(response);
+        });
+        result.whenComplete((response, error) -> {
+            if (result.isCancelled()) {
+                running.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Path to the cheapest reachable of several goals, found in one search where the backend
+     * supports it (see {@link PathfindingBackend#pathfindNearest}). Like
+     * {@link #pathfindAsync(PathQuery)}, it supersedes the previous query and its result becomes
+     * {@link #getLastPath()}; {@link PathfindResponse#goalIndex} tells which goal was reached.
+     */
+    public static CompletableFuture<PathfindResponse> pathfindNearestAsync(MultiGoalQuery query) {
+        long timeoutMs = ConfigManager.getConfig().pathfinder.queryTimeoutMs;
+        CompletableFuture<PathfindResponse> future = onMap(query.mapId,
+            mapId -> backend.pathfindNearestAsync(query.withMap(mapId), PATHFIND_EXECUTOR))
+            .orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+
+        CompletableFuture<PathfindResponse> previous = latestQuery.getAndSet(future);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+        future.whenComplete((response, error) -> {
+            if (error != null) {
+                if (!future.isCancelled()) {
+                    WieselClient.LOGGER.error("Failed to pathfind", error);
+                }
+            } else if (response != null && isLatest(future)) {
+                onPathFound(response);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Calculate many independent paths in one backend request on the current map. The results
+     * don't become {@link #getLastPath()} and don't supersede other queries.
+     * @return one response per query, in order; null entries where no path was found
+     */
+    public static CompletableFuture<List<PathfindResponse>> pathfindBatchAsync(List<PathQuery> queries) {
+        return pathfindBatchAsync(null, queries);
+    }
+
+    /**
+     * Like {@link #pathfindBatchAsync(List)}, on the given map.
+     */
+    public static CompletableFuture<List<PathfindResponse>> pathfindBatchAsync(String mapId, List<PathQuery> queries) {
+        long timeoutMs = ConfigManager.getConfig().pathfinder.queryTimeoutMs * Math.max(1, queries.size());
+        return onMap(mapId, target -> {
+            List<PathQuery> pinned = queries.stream().map(query -> query.withMap(target)).toList();
+            return backend.pathfindBatchAsync(pinned, PATHFIND_EXECUTOR);
+        }).orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
     }
 
-    private static List<PathNode> parseNodes(JsonArray array) {
-        List<PathNode> nodes = new ArrayList<>();
-        for (int i = 0; i < array.size(); i++) {
-            JsonObject obj = array.get(i).getAsJsonObject();
-            nodes.add(new PathNode(
-                obj.get("x").getAsInt(),
-                obj.get("y").getAsInt(),
-                obj.get("z").getAsInt(),
-                obj.has("top_bound") ? obj.get("top_bound").getAsFloat() : 0,
-                obj.has("path_weight") ? obj.get("path_weight").getAsFloat() : 0,
-                obj.has("is_liquid") && obj.get("is_liquid").getAsBoolean()
-            ));
+    /**
+     * Serve the query from the path cache, or submit it and cache the result.
+     */
+    private static CompletableFuture<PathfindResponse> lookup(PathQuery query) {
+        String map = mapOf(query);
+        PathfindResponse cached = pathCache.get(map, query);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
         }
-        return nodes;
+
+        CompletableFuture<PathfindResponse> future = onMap(query.mapId, mapId -> scheduler.submit(query.withMap(mapId)));
+        future.whenComplete((response, error) -> {
+            if (error == null && response != null) {
+                pathCache.put(map, query, response);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * @return the map the query runs against
+     */
+    private static String mapOf(PathQuery query) {
+        if (query.mapId != null) {
+            return query.mapId;
+        }
+        MapHandle active = activeMap.get();
+        return active != null ? active.name : null;
+    }
+
+    /**
+     * Run a query against a published version of its map.
+     *
+     * On a backend holding several maps the query is pinned to the map that is active now, so
+     * it finishes there even if another map becomes active meanwhile; a query for a map still
+     * loading waits for it. On a backend holding a single map the query retains the active
+     * handle while it runs, and waits while the map is swapped, switching first if it names
+     * a different map.
+     * @param mapId the map the query names, or null for the active one
+     * @param run starts the query with the map id to send along
+     */
+    private static <R> CompletableFuture<R> onMap(String mapId, Function<String, CompletableFuture<R>> run) {
+        MapHandle active = activeMap.get();
+        String target = mapId != null ? mapId : active != null ? active.name : null;
+        if (target == null) {
+            CompletableFuture<MapHandle> first = swapInProgress;
+            // No map yet: wait for the first one if it is on its way, else let the backend report it
+            return first != null ? after(settled(first), ignored -> onMap(mapId, run)) : start(mapId, run);
+        }
+
+        if (backend.supportsResidentMaps()) {
+            CompletableFuture<MapHandle> loading = pendingLoads.get(target);
+            return loading != null ? after(loading, handle -> start(target, run)) : start(target, run);
+        }
+
+        if (active != null && active.name.equals(target) && active.retain()) {
+            CompletableFuture<R> future = start(mapId, run);
+            future.whenComplete((response, error) -> active.release());
+            return future;
+        }
+        if (mapId != null) {
+            return after(loadMapAsync(target), handle -> onMap(mapId, run));
+        }
+        CompletableFuture<MapHandle> swap = swapInProgress;
+        // A null swap means it finished since the handle was read; retry on the new one
+        return swap != null ? after(settled(swap), ignored -> onMap(mapId, run)) : onMap(mapId, run);
+    }
+
+    private static <R> CompletableFuture<R> start(String mapId, Function<String, CompletableFuture<R>> run) {
+        try {
+            return run.apply(mapId);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Completes once the load is over, whether or not it succeeded.
+     */
+    private static CompletableFuture<Object> settled(CompletableFuture<MapHandle> load) {
+        return load.handle((handle, error) -> null);
+    }
+
+    /**
+     * Start the query once the gate completes. Cancelling the returned future cancels the query,
+     * also once it has started.
+     */
+    private static <T, R> CompletableFuture<R> after(CompletableFuture<T> gate, Function<T, CompletableFuture<R>> next) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        gate.whenComplete((value, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+                return;
+            }
+            if (result.isDone()) {
+                return; // Cancelled while waiting
+            }
+
+            CompletableFuture<R> inner;
+            try {
+                inner = next.apply(value);
+            } catch (Exception e) {
+                inner = CompletableFuture.failedFuture(e);
+            }
+            CompletableFuture<R> started = inner;
+            started.whenComplete((response, innerError) -> {
+                if (innerError != null) {
+                    result.completeExceptionally(innerError);
+                } else {
+                    result.complete(response);
+                }
+            });
+            result.whenComplete((response, resultError) -> {
+                if (result.isCancelled()) {
+                    started.cancel(false);
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * @return true if the future belongs to the most recent superseding query
+     */
+    public static boolean isLatest(CompletableFuture<PathfindResponse> future) {
+        return latestQuery.get() == future;
+    }
+
+    static void onPathFound(PathfindResponse response) {
+        lastPath = response;
+        WieselClient.LOGGER.info("Pathfinding successful: {} nodes, {} keynodes", response.pathBuffer.size(), response.keynodeBuffer.size());
+    }
+
+    /**
+     * Publish the path the walker spliced a replan into, so {@link #getLastPath()} and the
+     * renderer follow the route actually being walked. Keynodes carry over from the old path.
+     */
+    static void onPathRepaired(PathBuffer path) {
+        PathfindResponse previous = lastPath;
+        lastPath = new PathfindResponse(path, previous != null ? previous.keynodeBuffer : new PathBuffer());
     }
 
     public static PathfindResponse getLastPath() {
@@ -272,19 +705,38 @@ public class PathfinderManager {
     }
 
     public static String getCurrentMap() {
-        return currentMap;
+        MapHandle active = activeMap.get();
+        return active != null ? active.name : null;
+    }
+
+    /**
+     * @return the published version of the active map, or null before the first load
+     */
+    public static MapHandle getActiveMap() {
+        return activeMap.get();
+    }
+
+    public static PathCache getPathCache() {
+        return pathCache;
+    }
+
+    public static PathfindingBackend getBackend() {
+        return backend;
     }
 
     public static void shutdown() {
+        backend.shutdown();
+        PATHFIND_EXECUTOR.shutdownNow();
+        MAP_EXECUTOR.shutdownNow();
+
         if (keepaliveTimer != null) {
             keepaliveTimer.cancel();
             keepaliveTimer = null;
         }
 
-        if (pathfinderProcess != null) {
-            pathfinderProcess.destroy();
-            pathfinderProcess = null;
-            WieselClient.LOGGER.info("Stopped pathfinder process");
+        if (supervisor != null) {
+            supervisor.shutdown();
+            supervisor = null;
         }
     }
 }
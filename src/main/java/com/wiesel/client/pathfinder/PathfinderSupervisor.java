@@ -0,0 +1,313 @@
+package com.wiesel.client.pathfinder;
+
+import com.wiesel.client.WieselClient;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the external pathfinder process and keeps it running.
+ *
+ * - Uses the platform binary bundled in natives/ (extracted next to the maps), falling back
+ *   to Downloads/Pathfinding.exe.
+ * - The process counts as ready as soon as it answers /keepalive, polled with a short backoff
+ *   instead of a fixed sleep. A pathfinder that is already listening is used as is.
+ * - Its stdout/stderr are drained into the log, so it never blocks on a full pipe.
+ * - If it exits, it is restarted with exponential backoff.
+ */
+public class PathfinderSupervisor {
+    public enum State {
+        STOPPED,
+        STARTING,
+        READY,
+        DEGRADED // Not answering: crashed, restarting, or no binary found
+    }
+
+    private static final long PROBE_INITIAL_DELAY_MS = 25;
+    private static final long PROBE_MAX_DELAY_MS = 250;
+    private static final long PROBE_TIMEOUT_MS = 1000;
+    private static final long RESTART_INITIAL_DELAY_MS = 1000;
+    private static final long RESTART_MAX_DELAY_MS = 60000;
+    private static final long STABLE_UPTIME_MS = 60000; // Running this long resets the restart backoff
+
+    private final String apiUrl;
+    private final HttpClient httpClient;
+    private final File workingDir;
+    private final long startupTimeoutMs;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "WieselPathfinderSupervisor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile State state = State.STOPPED;
+    private volatile CompletableFuture<Void> ready = new CompletableFuture<>();
+    private volatile Process process = null;
+    private long restartDelayMs = RESTART_INITIAL_DELAY_MS;
+    private final AtomicBoolean launchPending = new AtomicBoolean(false); // A launch is queued or a restart scheduled
+    private volatile boolean stopping = false;
+
+    public PathfinderSupervisor(String apiUrl, HttpClient httpClient, File workingDir, long startupTimeoutMs) {
+        this.apiUrl = apiUrl;
+        this.httpClient = httpClient;
+        this.workingDir = workingDir;
+        this.startupTimeoutMs = startupTimeoutMs;
+    }
+
+    public void start() {
+        stopping = false;
+        setState(State.STARTING);
+        launchPending.set(true);
+        executor.execute(this::launch);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Wait until the pathfinder answers if it is starting, at most the startup timeout.
+     * @return true if it is ready
+     */
+    public boolean awaitReady() {
+        if (state != State.STARTING) {
+            return state == State.READY;
+        }
+        try {
+            ready.get(startupTimeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Report the outcome of a keepalive, which doubles as a health check.
+     */
+    public void onKeepalive(boolean answered) {
+        if (stopping) {
+            return;
+        }
+        if (answered && state == State.DEGRADED) {
+            setState(State.READY);
+        } else if (!answered && state != State.STARTING) {
+            if (state == State.READY) {
+                WieselClient.LOGGER.warn("Pathfinder stopped answering keepalives");
+                setState(State.DEGRADED);
+            }
+            if (process == null && state != State.STARTING && launchPending.compareAndSet(false, true)) {
+                // Not ours (or never started), so no exit to react to; try starting one. After a
+                // crash the restart is already scheduled with its backoff, so leave it to that.
+                executor.execute(this::launch);
+            }
+        }
+    }
+
+    private void launch() {
+        launchPending.set(false);
+        if (stopping) {
+            return;
+        }
+        setState(State.STARTING);
+
+        // Someone else may already run a pathfinder on the port
+        if (probe()) {
+            WieselClient.LOGGER.info("Using the pathfinder already running at {}", apiUrl);
+            setState(State.READY);
+            return;
+        }
+
+        File binary = findBinary();
+        if (binary == null) {
+            WieselClient.LOGGER.error("No pathfinder executable found (natives/{} or Downloads/Pathfinding.exe)", platformBinaryName());
+            setState(State.DEGRADED);
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        Process started;
+        try {
+            ProcessBuilder pb = new ProcessBuilder(binary.getAbsolutePath());
+            pb.directory(workingDir);
+            started = pb.start();
+        } catch (Exception e) {
+            WieselClient.LOGGER.error("Failed to start pathfinder {}", binary.getAbsolutePath(), e);
+            scheduleRestart();
+            return;
+        }
+        process = started;
+        drain(started.getInputStream(), false);
+        drain(started.getErrorStream(), true);
+        started.onExit().thenRun(() -> executor.execute(() -> onExit(started, start)));
+        WieselClient.LOGGER.info("Started pathfinder process {} (pid {})", binary.getName(), started.pid());
+
+        // Poll until it answers, backing off from a few milliseconds
+        long delay = PROBE_INITIAL_DELAY_MS;
+        while (started.isAlive() && !stopping && System.currentTimeMillis() - start < startupTimeoutMs) {
+            if (probe()) {
+                WieselClient.LOGGER.info("Pathfinder ready after {}ms", System.currentTimeMillis() - start);
+                setState(State.READY);
+                return;
+            }
+            sleep(delay);
+            delay = Math.min(delay * 2, PROBE_MAX_DELAY_MS);
+        }
+
+        if (started.isAlive() && !stopping) {
+            WieselClient.LOGGER.warn("Pathfinder not answering {}ms after start", startupTimeoutMs);
+            setState(State.DEGRADED);
+        }
+        // If it died, onExit schedules the restart
+    }
+
+    private void onExit(Process exited, long startedAt) {
+        if (exited != process || stopping) {
+            return;
+        }
+        launchPending.set(true); // Before clearing the process, so a failed keepalive can't launch first
+        process = null;
+        WieselClient.LOGGER.warn("Pathfinder process exited with code {}", exited.exitValue());
+        if (System.currentTimeMillis() - startedAt >= STABLE_UPTIME_MS) {
+            restartDelayMs = RESTART_INITIAL_DELAY_MS;
+        }
+        scheduleRestart();
+    }
+
+    private void scheduleRestart() {
+        setState(State.DEGRADED);
+        WieselClient.LOGGER.info("Restarting pathfinder in {}ms", restartDelayMs);
+        launchPending.set(true);
+        executor.schedule(this::launch, restartDelayMs, TimeUnit.MILLISECONDS);
+        restartDelayMs = Math.min(restartDelayMs * 2, RESTART_MAX_DELAY_MS);
+    }
+
+    private synchronized void setState(State newState) {
+        if (state == newState) {
+            return;
+        }
+        WieselClient.LOGGER.debug("Pathfinder state: {} -> {}", state, newState);
+        state = newState;
+        if (newState == State.READY) {
+            ready.complete(null);
+        } else if (ready.isDone()) {
+            ready = new CompletableFuture<>();
+        }
+    }
+
+    private boolean probe() {
+        try {
+            HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(apiUrl + "/keepalive"))
+                .timeout(Duration.ofMillis(PROBE_TIMEOUT_MS))
+                .GET()
+                .build();
+            return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            return false; // Not listening yet
+        }
+    }
+
+    private static void drain(InputStream stream, boolean isError) {
+        Thread t = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (isError) {
+                        WieselClient.LOGGER.warn("[pathfinder] {}", line);
+                    } else {
+                        WieselClient.LOGGER.info("[pathfinder] {}", line);
+                    }
+                }
+            } catch (Exception e) {
+                // Stream closed with the process
+            }
+        }, isError ? "WieselPathfinderStderr" : "WieselPathfinderStdout");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * The bundled binary for this platform, extracted when missing or changed, or the legacy
+     * Downloads/Pathfinding.exe.
+     */
+    private File findBinary() {
+        String name = platformBinaryName();
+        File extracted = new File(workingDir, "wiesel/" + name);
+        try (InputStream bundled = PathfinderSupervisor.class.getResourceAsStream("/natives/" + name)) {
+            if (bundled != null) {
+                byte[] bytes = bundled.readAllBytes();
+                if (!extracted.exists() || extracted.length() != bytes.length) {
+                    extracted.getParentFile().mkdirs();
+                    File tmp = new File(extracted.getParentFile(), name + ".tmp");
+                    Files.write(tmp.toPath(), bytes);
+                    Files.move(tmp.toPath(), extracted.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                extracted.setExecutable(true);
+                return extracted;
+            }
+        } catch (Exception e) {
+            WieselClient.LOGGER.warn("Failed to extract bundled pathfinder {}", name, e);
+        }
+
+        File downloads = new File(System.getProperty("user.home"), "Downloads");
+        for (File candidate : new File[] {new File(downloads, name), new File(downloads, "Pathfinding.exe")}) {
+            if (candidate.isFile()) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    static String platformBinaryName() {
+        String os = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+        if (os.contains("win")) {
+            return "pathfinder.exe";
+        }
+        if (os.contains("mac") || os.contains("darwin")) {
+            return "pathfinder-mac";
+        }
+        return "pathfinder-linux";
+    }
+
+    public void shutdown() {
+        stopping = true;
+        executor.shutdownNow();
+        Process running = process;
+        process = null;
+        if (running != null) {
+            running.destroy();
+            WieselClient.LOGGER.info("Stopped pathfinder process");
+        }
+        setState(State.STOPPED);
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
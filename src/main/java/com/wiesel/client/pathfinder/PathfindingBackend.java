@@ -0,0 +1,166 @@
+package com.wiesel.client.pathfinder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * A pathfinding engine that {@link PathfinderManager} can route queries to.
+ */
+public interface PathfindingBackend {
+    /**
+     * Short name used in config and log output (e.g. "http", "local").
+     */
+    String getName();
+
+    /**
+     * Load the given map so subsequent queries run against it.
+     * @return true if the map is loaded and ready
+     */
+    boolean loadMap(String mapName);
+
+    /**
+     * Load a map in the background without making it current, so a later switch to it is
+     * cheap. Only backends that keep several maps resident support this.
+     * @return true if the map is resident afterwards
+     */
+    default boolean preloadMap(String mapName) {
+        return false;
+    }
+
+    /**
+     * Whether several maps can be resident at once, with {@link PathQuery#mapId} choosing one per
+     * query. Other backends only answer for the map passed to {@link #loadMap} last.
+     */
+    default boolean supportsResidentMaps() {
+        return false;
+    }
+
+    /**
+     * @return true if the map is loaded and can be queried without switching
+     */
+    default boolean isResident(String mapName) {
+        return false;
+    }
+
+    /**
+     * Calculate a path for the query against its {@link PathQuery#mapId}, or the currently
+     * loaded map if it has none.
+     * @return the path, or null if no path could be found
+     */
+    PathfindResponse pathfind(PathQuery query) throws Exception;
+
+    /**
+     * Calculate a path without blocking the caller. Backends with a native async transport
+     * override this; the default runs {@link #pathfind(PathQuery)} on the given executor.
+     * Cancelling the returned future should abort the query where possible; the default
+     * interrupts the thread running it.
+     */
+    default CompletableFuture<PathfindResponse> pathfindAsync(PathQuery query, Executor executor) {
+        return runInterruptibly(() -> pathfind(query), executor);
+    }
+
+    /**
+     * Calculate a path, handing out prefixes of it as soon as they are final. Each segment
+     * continues where the previous one ended; together they make up the returned path.
+     * Backends that can't stream emit the whole path as a single segment on completion.
+     * @param onSegment called from a pathfinding thread for every new segment
+     */
+    default CompletableFuture<PathfindResponse> pathfindStreaming(PathQuery query, Executor executor,
+                                                                  Consumer<PathBuffer> onSegment) {
+        CompletableFuture<PathfindResponse> source = pathfindAsync(query, executor);
+        CompletableFuture<PathfindResponse> result = source.thenApply(response -> {
+            if (response != null && !response.pathBuffer.isEmpty()) {
+                onSegment.accept(response.pathBuffer);
+            }
+            return response;
+        });
+        result.whenComplete((response, error) -> {
+            if (error != null) {
+                source.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Path from the start to the cheapest reachable goal. Backends that can search for all goals
+     * at once override this; the default queries the goals one by one and keeps the cheapest.
+     * @return the path with {@link PathfindResponse#goalIndex} set, or null if no goal is reachable
+     */
+    default PathfindResponse pathfindNearest(MultiGoalQuery query) throws Exception {
+        PathfindResponse best = null;
+        for (int i = 0; i < query.getGoalCount(); i++) {
+            PathfindResponse response = pathfind(query.toQuery(i));
+            if (response != null && (best == null || response.getCost() < best.getCost())) {
+                best = response.forGoal(i);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Calculate independent paths in one go. Backends that can answer them in one request
+     * (or on one set of search buffers) override this; the default queries them in turn.
+     * @return one response per query, in order; null where no path was found
+     */
+    default List<PathfindResponse> pathfindBatch(List<PathQuery> queries) throws Exception {
+        List<PathfindResponse> responses = new ArrayList<>(queries.size());
+        for (PathQuery query : queries) {
+            responses.add(pathfind(query));
+        }
+        return responses;
+    }
+
+    default CompletableFuture<PathfindResponse> pathfindNearestAsync(MultiGoalQuery query, Executor executor) {
+        return runInterruptibly(() -> pathfindNearest(query), executor);
+    }
+
+    default CompletableFuture<List<PathfindResponse>> pathfindBatchAsync(List<PathQuery> queries, Executor executor) {
+        return runInterruptibly(() -> pathfindBatch(queries), executor);
+    }
+
+    /**
+     * Run a blocking task on the executor. Unlike {@link CompletableFuture#supplyAsync}, completing
+     * the returned future early (cancelling it, or a timeout) interrupts the thread running the
+     * task, so searches and socket reads that check for interrupts give up their thread.
+     */
+    static <T> CompletableFuture<T> runInterruptibly(Callable<T> task, Executor executor) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        AtomicReference<Thread> worker = new AtomicReference<>();
+        future.whenComplete((result, error) -> {
+            synchronized (worker) {
+                Thread thread = worker.get();
+                if (thread != null && thread != Thread.currentThread()) {
+                    thread.interrupt();
+                }
+            }
+        });
+        executor.execute(() -> {
+            worker.set(Thread.currentThread());
+            try {
+                if (!future.isDone()) {
+                    future.complete(task.call());
+                }
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                synchronized (worker) {
+                    worker.set(null);
+                    Thread.interrupted(); // Don't leak a late interrupt into the pool's next task
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Release any resources held by the backend.
+     */
+    default void shutdown() {
+    }
+}
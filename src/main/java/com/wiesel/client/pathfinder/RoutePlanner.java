@@ -0,0 +1,282 @@
+package com.wiesel.client.pathfinder;
+
+import com.wiesel.client.WieselClient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Plans tours over many waypoints (commission spots, crop plots, ...): finds a short visiting
+ * order and stitches the legs into one path for {@link PathWalker#startWalking}.
+ *
+ * - The travel cost between every ordered pair of stops is computed through
+ *   {@link PathfinderManager}, so legs come from the path cache when known and are otherwise
+ *   searched in parallel, as many at a time as the scheduler allows.
+ * - The order starts from nearest neighbour and is improved with 2-opt and Or-opt moves until
+ *   none helps or the time budget runs out. Costs may differ per direction (drops are cheaper
+ *   than climbs), so every move is evaluated on directed costs.
+ * - Stitching re-requests the legs of the chosen order, which are cache hits by then.
+ */
+public class RoutePlanner {
+    static final double UNREACHABLE = 1e9; // Finite, so cost sums stay comparable
+
+    /**
+     * A planned tour.
+     */
+    public static class Route {
+        public final int[] order;             // Waypoint indices in visiting order
+        public final PathfindResponse path;   // The whole tour as one path, null if a leg failed
+        public final double cost;
+        public final long planningMs;
+
+        Route(int[] order, PathfindResponse path, double cost, long planningMs) {
+            this.order = order;
+            this.path = path;
+            this.cost = cost;
+            this.planningMs = planningMs;
+        }
+    }
+
+    /**
+     * Plan a tour from the start through every waypoint, and back to the start if {@code loop}.
+     * The stitched path becomes {@link PathfinderManager#getLastPath()}.
+     * @param budgetMs time allowed for improving the order once the costs are known
+     */
+    public static CompletableFuture<Route> planAsync(double startX, double startY, double startZ,
+                                                     double[] xs, double[] ys, double[] zs,
+                                                     boolean loop, long budgetMs) {
+        if (xs.length != ys.length || xs.length != zs.length) {
+            throw new IllegalArgumentException("Waypoint coordinate arrays differ in length");
+        }
+        long start = System.currentTimeMillis();
+
+        // Stop 0 is the start, stop i + 1 waypoint i
+        int n = xs.length + 1;
+        double[] x = new double[n], y = new double[n], z = new double[n];
+        x[0] = startX;
+        y[0] = startY;
+        z[0] = startZ;
+        System.arraycopy(xs, 0, x, 1, xs.length);
+        System.arraycopy(ys, 0, y, 1, ys.length);
+        System.arraycopy(zs, 0, z, 1, zs.length);
+
+        // Every leg is submitted at once; the scheduler runs them across its in-flight slots
+        double[][] costs = new double[n][n];
+        List<CompletableFuture<Void>> legs = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (i == j || (j == 0 && !loop)) {
+                    continue;
+                }
+                int from = i, to = j;
+                legs.add(leg(x, y, z, from, to).handle((response, error) -> {
+                    costs[from][to] = response != null && error == null ? response.getCost() : UNREACHABLE;
+                    return null;
+                }));
+            }
+        }
+
+        return CompletableFuture.allOf(legs.toArray(CompletableFuture[]::new)).thenCompose(ignored -> {
+            long matrixMs = System.currentTimeMillis() - start;
+            int[] tour = solve(costs, loop, budgetMs * 1_000_000L);
+            double cost = tourCost(costs, tour, loop);
+            WieselClient.LOGGER.info("Planned route over {} waypoints: {} legs in {}ms, order cost {}",
+                xs.length, legs.size(), matrixMs, Math.round(cost));
+
+            int[] order = new int[tour.length - 1];
+            for (int i = 1; i < tour.length; i++) {
+                order[i - 1] = tour[i] - 1;
+            }
+            return stitch(x, y, z, tour, loop).thenApply(path -> {
+                if (path != null) {
+                    PathfinderManager.onPathFound(path);
+                }
+                return new Route(order, path, cost, System.currentTimeMillis() - start);
+            });
+        });
+    }
+
+    private static CompletableFuture<PathfindResponse> leg(double[] x, double[] y, double[] z, int from, int to) {
+        return PathfinderManager.pathfindAsync(new PathQuery(x[from], y[from], z[from], x[to], y[to], z[to]), false);
+    }
+
+    /**
+     * Request the legs of the tour and join them; consecutive legs share their joint node.
+     */
+    private static CompletableFuture<PathfindResponse> stitch(double[] x, double[] y, double[] z, int[] tour, boolean loop) {
+        List<CompletableFuture<PathfindResponse>> legs = new ArrayList<>();
+        for (int i = 0; i + 1 < tour.length; i++) {
+            legs.add(leg(x, y, z, tour[i], tour[i + 1]));
+        }
+        if (loop && tour.length > 1) {
+            legs.add(leg(x, y, z, tour[tour.length - 1], tour[0]));
+        }
+
+        return CompletableFuture.allOf(legs.toArray(CompletableFuture[]::new)).handle((ignored, error) -> {
+            PathBuffer path = new PathBuffer();
+            PathBuffer keynodes = new PathBuffer();
+            float cost = 0;
+            for (CompletableFuture<PathfindResponse> future : legs) {
+                PathfindResponse leg = future.isCompletedExceptionally() ? null : future.join();
+                if (leg == null || leg.pathBuffer.isEmpty()) {
+                    WieselClient.LOGGER.error("Route has an unreachable leg; not stitching it");
+                    return null;
+                }
+                append(path, leg.pathBuffer);
+                append(keynodes, leg.keynodeBuffer);
+                cost += leg.getCost();
+            }
+            return new PathfindResponse(path, keynodes, cost, -1);
+        });
+    }
+
+    private static void append(PathBuffer target, PathBuffer leg) {
+        int from = 0;
+        if (!target.isEmpty() && !leg.isEmpty() && target.getX(target.size() - 1) == leg.getX(0)
+                && target.getY(target.size() - 1) == leg.getY(0) && target.getZ(target.size() - 1) == leg.getZ(0)) {
+            from = 1;
+        }
+        for (int i = from; i < leg.size(); i++) {
+            target.add(leg, i);
+        }
+    }
+
+    /**
+     * Visiting order for the stops, starting at stop 0: nearest neighbour, then 2-opt and Or-opt
+     * until no move improves it or the budget is spent.
+     * @param costs directed travel costs between stops
+     * @param loop whether the tour returns to stop 0
+     * @return stop indices, starting with 0
+     */
+    static int[] solve(double[][] costs, boolean loop, long budgetNanos) {
+        int n = costs.length;
+        long deadline = System.nanoTime() + budgetNanos;
+
+        // Work on the tour with a fixed end: stop 0 again for a loop, a free dummy stop otherwise
+        int end = n;
+        double[][] c = new double[n + 1][n + 1];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(costs[i], 0, c[i], 0, n);
+            c[i][end] = loop ? costs[i][0] : 0;
+        }
+
+        int[] tour = new int[n + 1];
+        boolean[] visited = new boolean[n];
+        visited[0] = true;
+        for (int k = 1; k < n; k++) {
+            int previous = tour[k - 1], best = -1;
+            for (int j = 1; j < n; j++) {
+                if (!visited[j] && (best < 0 || c[previous][j] < c[previous][best])) {
+                    best = j;
+                }
+            }
+            tour[k] = best;
+            visited[best] = true;
+        }
+        tour[n] = end;
+
+        boolean improved = true;
+        while (improved && System.nanoTime() < deadline) {
+            improved = twoOpt(c, tour, deadline) | orOpt(c, tour, deadline);
+        }
+        return Arrays.copyOf(tour, n);
+    }
+
+    /**
+     * Reverse tour[i..j] where that shortens the tour. The cost of the reversed stretch comes
+     * from prefix sums over both directions, so each candidate is O(1).
+     */
+    private static boolean twoOpt(double[][] c, int[] tour, long deadline) {
+        int m = tour.length;
+        double[] forward = new double[m];
+        double[] backward = new double[m];
+        boolean improved = false;
+        boolean changed = true;
+        while (changed && System.nanoTime() < deadline) {
+            changed = false;
+            for (int k = 1; k < m; k++) {
+                forward[k] = forward[k - 1] + c[tour[k - 1]][tour[k]];
+                backward[k] = backward[k - 1] + c[tour[k]][tour[k - 1]];
+            }
+
+            search:
+            for (int i = 1; i < m - 2; i++) {
+                for (int j = i + 1; j < m - 1; j++) {
+                    double before = c[tour[i - 1]][tour[i]] + (forward[j] - forward[i]) + c[tour[j]][tour[j + 1]];
+                    double after = c[tour[i - 1]][tour[j]] + (backward[j] - backward[i]) + c[tour[i]][tour[j + 1]];
+                    if (after < before - 1e-6) {
+                        reverse(tour, i, j);
+                        changed = improved = true;
+                        break search;
+                    }
+                }
+            }
+        }
+        return improved;
+    }
+
+    /**
+     * Move runs of 1-3 stops elsewhere in the tour (keeping their direction) where that
+     * shortens it.
+     */
+    private static boolean orOpt(double[][] c, int[] tour, long deadline) {
+        int m = tour.length;
+        boolean improved = false;
+        for (int length = 1; length <= 3; length++) {
+            for (int i = 1; i + length < m && System.nanoTime() < deadline; i++) {
+                int first = tour[i], last = tour[i + length - 1];
+                int before = tour[i - 1], after = tour[i + length];
+                double removed = c[before][first] + c[last][after] - c[before][after];
+
+                // Insert between tour[k] and tour[k + 1], outside the run
+                for (int k = 0; k < m - 1; k++) {
+                    if (k >= i - 1 && k < i + length) {
+                        continue;
+                    }
+                    double added = c[tour[k]][first] + c[last][tour[k + 1]] - c[tour[k]][tour[k + 1]];
+                    if (added < removed - 1e-6) {
+                        move(tour, i, length, k);
+                        improved = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return improved;
+    }
+
+    private static void reverse(int[] tour, int i, int j) {
+        while (i < j) {
+            int t = tour[i];
+            tour[i++] = tour[j];
+            tour[j--] = t;
+        }
+    }
+
+    /**
+     * Move tour[i..i+length) to just after position k.
+     */
+    private static void move(int[] tour, int i, int length, int k) {
+        int[] run = Arrays.copyOfRange(tour, i, i + length);
+        if (k < i) {
+            System.arraycopy(tour, k + 1, tour, k + 1 + length, i - k - 1);
+            System.arraycopy(run, 0, tour, k + 1, length);
+        } else {
+            System.arraycopy(tour, i + length, tour, i, k - i - length + 1);
+            System.arraycopy(run, 0, tour, k - length + 1, length);
+        }
+    }
+
+    static double tourCost(double[][] costs, int[] tour, boolean loop) {
+        double cost = 0;
+        for (int i = 0; i + 1 < tour.length; i++) {
+            cost += costs[tour[i]][tour[i + 1]];
+        }
+        if (loop && tour.length > 1) {
+            cost += costs[tour[tour.length - 1]][tour[0]];
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,425 @@
+package com.wiesel.client.pathfinder.engine;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+
+import java.util.Arrays;
+
+/**
+ * A* over a {@link WalkableGraph}.
+ *
+ * Per-node search state lives in slots allocated on first visit and found through an
+ * open-addressing table, so memory scales with the nodes a query touches rather than with
+ * the size of the map. Buffers are reused between queries; a generation counter marks which
+ * table entries belong to the current search so nothing is cleared per query.
+ * Not thread safe - callers must serialize queries on one instance.
+ */
+public class AStarSearch {
+    private static final int MAX_EXPANSIONS = 4_000_000;
+    private static final int INTERRUPT_CHECK_MASK = 0x3FF; // Check for cancellation every 1024 expansions
+    private static final float DIAGONAL_COST = (float) Math.sqrt(2);
+    private static final float VERTICAL_COST = 0.5f;
+
+    // Horizontal moves, then the vertical offsets tried for each move (in order of preference)
+    private static final int[] DIR_X = {1, -1, 0, 0, 1, 1, -1, -1};
+    private static final int[] DIR_Z = {0, 0, 1, -1, 1, -1, 1, -1};
+    private static final int[] STEP_Y = {0, 1, -1, -2, -3};
+
+    private final WalkableGraph map;
+
+    // Targets of a running costsWithin call that have not been settled yet
+    private int[] pendingTargets = null;
+    private int pendingCount = 0;
+
+    // Goals of a running searchAny call; the heuristic aims at their bounding box
+    private final IntOpenHashSet goalSet = new IntOpenHashSet();
+    private boolean anyGoal = false;
+    private int goalMinX, goalMinY, goalMinZ, goalMaxX, goalMaxY, goalMaxZ;
+
+    // Cost of the path returned by the last search
+    private float lastCost = Float.NaN;
+
+    // Node id -> slot table (linear probing), entries are valid if their generation matches
+    private int[] tableNodes = new int[1 << 12];
+    private int[] tableSlots = new int[1 << 12];
+    private int[] tableGeneration = new int[1 << 12];
+    private int currentGeneration = 0;
+
+    // Search state per visited node, indexed by slot
+    private int slotCount = 0;
+    private int[] slotNodes = new int[1 << 11];
+    private float[] gScore = new float[1 << 11];
+    private int[] parent = new int[1 << 11];
+    private boolean[] closed = new boolean[1 << 11];
+
+    // Binary min-heap with lazy deletion (stale entries are skipped when popped)
+    private int[] heapSlots = new int[1024];
+    private float[] heapKeys = new float[1024];
+    private int heapSize = 0;
+
+    public AStarSearch(WalkableGraph map) {
+        this.map = map;
+    }
+
+    /**
+     * Find a path between two node indices.
+     * @param heuristicWeight 1.0 for optimal paths, larger values trade optimality for speed
+     * @return node indices from start to goal, or null if the goal is unreachable
+     */
+    public int[] search(int start, int goal, float heuristicWeight) {
+        return searchWithin(start, goal, heuristicWeight,
+            Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Like {@link #search}, but never leaves the given block column bounds (inclusive).
+     */
+    public int[] searchWithin(int start, int goal, float heuristicWeight, int minX, int minZ, int maxX, int maxZ) {
+        int goalSlot = run(start, goal, heuristicWeight, minX, minZ, maxX, maxZ);
+        return goalSlot < 0 ? null : reconstruct(goalSlot);
+    }
+
+    /**
+     * Find a path to whichever of the goals the search reaches first: with a heuristic weight
+     * of 1.0 that is the cheapest one. One search replaces one per goal; the heuristic is the
+     * (admissible) estimate to the goals' bounding box.
+     * @return node indices from start to the reached goal (the last entry), or null if none is reachable
+     */
+    public int[] searchAny(int start, int[] goals, float heuristicWeight) {
+        if (goals.length == 0) {
+            lastCost = Float.NaN;
+            return null;
+        }
+
+        goalSet.clear();
+        goalMinX = goalMinY = goalMinZ = Integer.MAX_VALUE;
+        goalMaxX = goalMaxY = goalMaxZ = Integer.MIN_VALUE;
+        for (int goal : goals) {
+            goalSet.add(goal);
+            goalMinX = Math.min(goalMinX, map.getX(goal));
+            goalMinY = Math.min(goalMinY, map.getY(goal));
+            goalMinZ = Math.min(goalMinZ, map.getZ(goal));
+            goalMaxX = Math.max(goalMaxX, map.getX(goal));
+            goalMaxY = Math.max(goalMaxY, map.getY(goal));
+            goalMaxZ = Math.max(goalMaxZ, map.getZ(goal));
+        }
+
+        anyGoal = true;
+        try {
+            int goalSlot = run(start, -1, heuristicWeight,
+                Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+            return goalSlot < 0 ? null : reconstruct(goalSlot);
+        } finally {
+            anyGoal = false;
+        }
+    }
+
+    /**
+     * @return cost of the path returned by the last search, NaN if it found none
+     */
+    public float getLastCost() {
+        return lastCost;
+    }
+
+    /**
+     * Cheapest cost from {@code start} to each target without leaving the given bounds.
+     * @return one cost per target, {@link Float#POSITIVE_INFINITY} where unreachable
+     */
+    public float[] costsWithin(int start, int[] targets, int minX, int minZ, int maxX, int maxZ) {
+        pendingTargets = targets;
+        pendingCount = targets.length;
+        try {
+            run(start, -1, 0, minX, minZ, maxX, maxZ);
+        } finally {
+            pendingTargets = null;
+        }
+
+        float[] costs = new float[targets.length];
+        for (int i = 0; i < targets.length; i++) {
+            int slot = slotOf(targets[i]);
+            costs[i] = slot >= 0 && closed[slot] ? gScore[slot] : Float.POSITIVE_INFINITY;
+        }
+        return costs;
+    }
+
+    /**
+     * Run the search. With {@code goal == -1} this is a Dijkstra search that stops once every
+     * pending target is settled, or expands everything reachable if there are none.
+     * @return the goal's slot, or -1 if it was not reached
+     */
+    private int run(int start, int goal, float heuristicWeight, int minX, int minZ, int maxX, int maxZ) {
+        beginSearch();
+        lastCost = Float.NaN;
+
+        boolean informed = (goal >= 0 || anyGoal) && heuristicWeight > 0;
+        if (goal >= 0) {
+            goalMinX = goalMaxX = map.getX(goal);
+            goalMinY = goalMaxY = map.getY(goal);
+            goalMinZ = goalMaxZ = map.getZ(goal);
+        }
+
+        push(visit(start, 0, -1), informed ? heuristicWeight * heuristic(start) : 0);
+
+        int expansions = 0;
+        while (heapSize > 0) {
+            int currentSlot = pop();
+            if (closed[currentSlot]) continue;
+            closed[currentSlot] = true;
+
+            int current = slotNodes[currentSlot];
+            if (current == goal || anyGoal && goalSet.contains(current)) {
+                lastCost = gScore[currentSlot];
+                return currentSlot;
+            }
+            if (pendingTargets != null && settleTarget(current)) {
+                return -1;
+            }
+
+            if (++expansions > MAX_EXPANSIONS) {
+                return -1;
+            }
+            if ((expansions & INTERRUPT_CHECK_MASK) == 0 && Thread.currentThread().isInterrupted()) {
+                return -1; // The query was cancelled or timed out
+            }
+
+            int cx = map.getX(current);
+            int cy = map.getY(current);
+            int cz = map.getZ(current);
+            float currentG = gScore[currentSlot];
+
+            for (int d = 0; d < DIR_X.length; d++) {
+                int nx = cx + DIR_X[d];
+                int nz = cz + DIR_Z[d];
+                if (nx < minX || nx > maxX || nz < minZ || nz > maxZ) continue;
+                boolean diagonal = DIR_X[d] != 0 && DIR_Z[d] != 0;
+
+                for (int stepY : STEP_Y) {
+                    int ny = cy + stepY;
+                    int neighbor = map.indexOf(nx, ny, nz);
+                    if (neighbor < 0) continue;
+
+                    // Don't cut corners diagonally past blocked columns
+                    if (diagonal && (!isOpen(nx, cy, ny, cz) || !isOpen(cx, cy, ny, nz))) {
+                        break;
+                    }
+
+                    int slot = slotOf(neighbor);
+                    if (slot < 0 || !closed[slot]) {
+                        float tentative = currentG + stepCost(diagonal, stepY, map.getPathWeight(neighbor));
+
+                        if (slot < 0 || tentative < gScore[slot]) {
+                            slot = visit(neighbor, tentative, currentSlot);
+                            push(slot, informed ? tentative + heuristicWeight * heuristic(neighbor) : tentative);
+                        }
+                    }
+                    break;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return true once the last pending target has been settled
+     */
+    private boolean settleTarget(int node) {
+        for (int target : pendingTargets) {
+            if (target == node && --pendingCount == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The neighbor reached by a straight (non-diagonal) move, using the same step rules as the search.
+     * @return the neighbor's node id, or -1 if the move is not possible
+     */
+    public static int step(WalkableGraph map, int node, int dirX, int dirZ) {
+        int nx = map.getX(node) + dirX;
+        int nz = map.getZ(node) + dirZ;
+        for (int stepY : STEP_Y) {
+            int neighbor = map.indexOf(nx, map.getY(node) + stepY, nz);
+            if (neighbor >= 0) {
+                return neighbor;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Cost of moving onto a node; every path cost in the engine is a sum of these.
+     */
+    public static float stepCost(boolean diagonal, int dy, float pathWeight) {
+        return (diagonal ? DIAGONAL_COST : 1.0f) + Math.abs(dy) * VERTICAL_COST + pathWeight;
+    }
+
+    /**
+     * Admissible cost estimate for the given block distances.
+     */
+    public static float estimate(int dx, int dy, int dz) {
+        // Octile distance on the horizontal plane plus the vertical step cost
+        dx = Math.abs(dx);
+        dz = Math.abs(dz);
+        int min = Math.min(dx, dz);
+        int max = Math.max(dx, dz);
+        return (max - min) + min * DIAGONAL_COST + Math.abs(dy) * VERTICAL_COST;
+    }
+
+    private boolean isOpen(int x, int y1, int y2, int z) {
+        return map.indexOf(x, y1, z) >= 0 || map.indexOf(x, y2, z) >= 0;
+    }
+
+    /**
+     * Estimate to the goal box; a single goal is a box of one block.
+     */
+    private float heuristic(int idx) {
+        return estimate(outside(map.getX(idx), goalMinX, goalMaxX),
+            outside(map.getY(idx), goalMinY, goalMaxY),
+            outside(map.getZ(idx), goalMinZ, goalMaxZ));
+    }
+
+    private static int outside(int value, int min, int max) {
+        return value < min ? min - value : value > max ? value - max : 0;
+    }
+
+    private void beginSearch() {
+        currentGeneration++;
+        if (currentGeneration == Integer.MAX_VALUE) {
+            Arrays.fill(tableGeneration, 0);
+            currentGeneration = 1;
+        }
+        slotCount = 0;
+        heapSize = 0;
+    }
+
+    private static int hash(int node) {
+        int h = node * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return the slot of a node visited in the current search, or -1
+     */
+    private int slotOf(int node) {
+        int mask = tableNodes.length - 1;
+        for (int i = hash(node) & mask; tableGeneration[i] == currentGeneration; i = (i + 1) & mask) {
+            if (tableNodes[i] == node) {
+                return tableSlots[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Record a (better) route to a node, allocating its slot on first visit.
+     * @return the node's slot
+     */
+    private int visit(int node, float g, int fromSlot) {
+        int slot = slotOf(node);
+        if (slot < 0) {
+            if (slotCount == slotNodes.length) {
+                int capacity = slotCount * 2;
+                slotNodes = Arrays.copyOf(slotNodes, capacity);
+                gScore = Arrays.copyOf(gScore, capacity);
+                parent = Arrays.copyOf(parent, capacity);
+                closed = Arrays.copyOf(closed, capacity);
+            }
+            slot = slotCount++;
+            slotNodes[slot] = node;
+            closed[slot] = false;
+            insert(node, slot);
+        }
+        gScore[slot] = g;
+        parent[slot] = fromSlot;
+        return slot;
+    }
+
+    private void insert(int node, int slot) {
+        // Keep the table at most half full
+        if (slotCount * 2 > tableNodes.length) {
+            rehash(tableNodes.length * 2);
+        }
+
+        int mask = tableNodes.length - 1;
+        int i = hash(node) & mask;
+        while (tableGeneration[i] == currentGeneration) {
+            i = (i + 1) & mask;
+        }
+        tableNodes[i] = node;
+        tableSlots[i] = slot;
+        tableGeneration[i] = currentGeneration;
+    }
+
+    private void rehash(int capacity) {
+        tableNodes = new int[capacity];
+        tableSlots = new int[capacity];
+        tableGeneration = new int[capacity];
+
+        // Slots of the current search are exactly the live entries
+        int mask = capacity - 1;
+        for (int slot = 0; slot < slotCount; slot++) {
+            int i = hash(slotNodes[slot]) & mask;
+            while (tableGeneration[i] == currentGeneration) {
+                i = (i + 1) & mask;
+            }
+            tableNodes[i] = slotNodes[slot];
+            tableSlots[i] = slot;
+            tableGeneration[i] = currentGeneration;
+        }
+    }
+
+    private int[] reconstruct(int goalSlot) {
+        int length = 0;
+        for (int slot = goalSlot; slot != -1; slot = parent[slot]) {
+            length++;
+        }
+
+        int[] result = new int[length];
+        int i = length - 1;
+        for (int slot = goalSlot; slot != -1; slot = parent[slot]) {
+            result[i--] = slotNodes[slot];
+        }
+        return result;
+    }
+
+    private void push(int slot, float key) {
+        if (heapSize == heapSlots.length) {
+            heapSlots = Arrays.copyOf(heapSlots, heapSize * 2);
+            heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+        }
+
+        int i = heapSize++;
+        while (i > 0) {
+            int p = (i - 1) >>> 1;
+            if (heapKeys[p] <= key) break;
+            heapSlots[i] = heapSlots[p];
+            heapKeys[i] = heapKeys[p];
+            i = p;
+        }
+        heapSlots[i] = slot;
+        heapKeys[i] = key;
+    }
+
+    private int pop() {
+        int result = heapSlots[0];
+        int lastSlot = heapSlots[--heapSize];
+        float lastKey = heapKeys[heapSize];
+
+        int i = 0;
+        int half = heapSize >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+                child++;
+            }
+            if (lastKey <= heapKeys[child]) break;
+            heapSlots[i] = heapSlots[child];
+            heapKeys[i] = heapKeys[child];
+            i = child;
+        }
+        heapSlots[i] = lastSlot;
+        heapKeys[i] = lastKey;
+        return result;
+    }
+}
@@ -0,0 +1,522 @@
+package com.wiesel.client.pathfinder.engine;
+
+import com.wiesel.client.WieselClient;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Precomputed abstraction of a map for hierarchical pathfinding (HPA*).
+ *
+ * The map is cut into 32x32 column clusters. Where walkable ground crosses a cluster border,
+ * transition nodes are picked every few blocks along each contiguous stretch of border ("entrance").
+ * The abstract graph links the two sides of every transition and, inside each cluster, every
+ * pair of transition nodes with their cheapest in-cluster cost. Costs use
+ * {@link AStarSearch#stepCost}, so path weights are honored at both levels.
+ *
+ * A long query searches the abstract graph and then refines only the clusters on the route.
+ * The graph is persisted as maps/{name}/hpa.bin and rebuilt when the map changes.
+ */
+public class HierarchicalGraph {
+    public static final String FILE_NAME = "hpa.bin";
+
+    private static final int MAGIC = 0x57485041; // "WHPA"
+    private static final int VERSION = 1;
+
+    private static final int CLUSTER_SHIFT = 5;
+    private static final int CLUSTER_SIZE = 1 << CLUSTER_SHIFT;
+
+    // Long entrances are split into stretches of this many blocks with a transition in the middle of each
+    private static final int ENTRANCE_SPACING = 8;
+
+    // Shorter queries are answered faster by a plain search than by connecting to the abstraction
+    private static final int LONG_RANGE_CLUSTERS = 4;
+
+    private static final int[] BORDER_X = {1, -1, 0, 0};
+    private static final int[] BORDER_Z = {0, 0, 1, -1};
+
+    private final WalkableGraph map;
+    private final int[] nodes;       // abstract id -> map node id
+    private final int[] edgeStart;   // adjacency in compressed rows, indexed by abstract id
+    private final int[] edgeTarget;
+    private final float[] edgeCost;
+    private final Map<Long, int[]> clusterNodes = new HashMap<>();
+
+    private HierarchicalGraph(WalkableGraph map, int[] nodes, int[] edgeStart, int[] edgeTarget, float[] edgeCost) {
+        this.map = map;
+        this.nodes = nodes;
+        this.edgeStart = edgeStart;
+        this.edgeTarget = edgeTarget;
+        this.edgeCost = edgeCost;
+
+        Map<Long, List<Integer>> grouped = new HashMap<>();
+        for (int i = 0; i < nodes.length; i++) {
+            grouped.computeIfAbsent(clusterOf(nodes[i]), k -> new ArrayList<>()).add(i);
+        }
+        for (Map.Entry<Long, List<Integer>> entry : grouped.entrySet()) {
+            clusterNodes.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    /**
+     * Load the abstraction stored next to the map, building and saving it first if it is
+     * missing or was built for a different version of the map.
+     */
+    public static HierarchicalGraph open(VoxelMapStore map, File mapDir) throws IOException {
+        Path file = mapDir.toPath().resolve(FILE_NAME);
+        HierarchicalGraph loaded = read(map, file);
+        if (loaded != null) {
+            return loaded;
+        }
+
+        long start = System.currentTimeMillis();
+        HierarchicalGraph built = build(map);
+        built.write(file, map.getFingerprint());
+        WieselClient.LOGGER.info("Built path abstraction for map '{}': {} nodes, {} edges, {} clusters in {}ms",
+            map.getName(), built.nodes.length, built.edgeTarget.length, built.clusterNodes.size(),
+            System.currentTimeMillis() - start);
+        return built;
+    }
+
+    /**
+     * Compute the abstraction. Clusters are processed in parallel.
+     */
+    public static HierarchicalGraph build(WalkableGraph map) {
+        // Border crossings per direction, grouped by cluster: each entry is {from, to}
+        List<Map<Long, List<int[]>>> crossings = new ArrayList<>();
+        for (int d = 0; d < BORDER_X.length; d++) {
+            crossings.add(new HashMap<>());
+        }
+        for (int id = 0; id < map.size(); id++) {
+            int x = map.getX(id);
+            int z = map.getZ(id);
+            long cluster = clusterKey(x, z);
+            for (int d = 0; d < BORDER_X.length; d++) {
+                if (clusterKey(x + BORDER_X[d], z + BORDER_Z[d]) == cluster) continue;
+
+                int neighbor = AStarSearch.step(map, id, BORDER_X[d], BORDER_Z[d]);
+                if (neighbor >= 0) {
+                    crossings.get(d).computeIfAbsent(cluster, k -> new ArrayList<>()).add(new int[]{id, neighbor});
+                }
+            }
+        }
+
+        Map<Integer, Integer> abstractIds = new HashMap<>();
+        List<Integer> nodeList = new ArrayList<>();
+        List<Edge> interEdges = new ArrayList<>();
+
+        for (int d = 0; d < BORDER_X.length; d++) {
+            boolean alongZ = BORDER_X[d] != 0;
+            for (List<int[]> border : crossings.get(d).values()) {
+                for (int[] transition : pickTransitions(map, border, alongZ)) {
+                    int from = abstractId(abstractIds, nodeList, transition[0]);
+                    int to = abstractId(abstractIds, nodeList, transition[1]);
+                    float cost = AStarSearch.stepCost(false, map.getY(transition[1]) - map.getY(transition[0]),
+                        map.getPathWeight(transition[1]));
+                    interEdges.add(new Edge(from, to, cost));
+                }
+            }
+        }
+
+        int[] nodes = nodeList.stream().mapToInt(Integer::intValue).toArray();
+        Map<Long, List<Integer>> byCluster = new HashMap<>();
+        for (int i = 0; i < nodes.length; i++) {
+            byCluster.computeIfAbsent(clusterKey(map.getX(nodes[i]), map.getZ(nodes[i])), k -> new ArrayList<>()).add(i);
+        }
+
+        // Cheapest in-cluster cost between every pair of transition nodes of a cluster
+        ThreadLocal<AStarSearch> searches = ThreadLocal.withInitial(() -> new AStarSearch(map));
+        List<Edge> intraEdges = byCluster.entrySet().parallelStream().flatMap(entry -> {
+            int[] members = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+            int[] targets = new int[members.length];
+            for (int i = 0; i < members.length; i++) {
+                targets[i] = nodes[members[i]];
+            }
+
+            long cluster = entry.getKey();
+            int minX = (int) (cluster >> 32) << CLUSTER_SHIFT;
+            int minZ = (int) cluster << CLUSTER_SHIFT;
+            AStarSearch search = searches.get();
+
+            List<Edge> edges = new ArrayList<>();
+            for (int i = 0; i < members.length; i++) {
+                float[] costs = search.costsWithin(targets[i], targets, minX, minZ,
+                    minX + CLUSTER_SIZE - 1, minZ + CLUSTER_SIZE - 1);
+                for (int j = 0; j < members.length; j++) {
+                    if (i != j && costs[j] != Float.POSITIVE_INFINITY) {
+                        edges.add(new Edge(members[i], members[j], costs[j]));
+                    }
+                }
+            }
+            return edges.stream();
+        }).collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+
+        List<Edge> edges = new ArrayList<>(interEdges);
+        edges.addAll(intraEdges);
+        edges.sort(Comparator.comparingInt(edge -> edge.from));
+
+        int[] edgeStart = new int[nodes.length + 1];
+        int[] edgeTarget = new int[edges.size()];
+        float[] edgeCost = new float[edges.size()];
+        for (int i = 0; i < edges.size(); i++) {
+            Edge edge = edges.get(i);
+            edgeStart[edge.from + 1]++;
+            edgeTarget[i] = edge.to;
+            edgeCost[i] = edge.cost;
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            edgeStart[i + 1] += edgeStart[i];
+        }
+
+        return new HierarchicalGraph(map, nodes, edgeStart, edgeTarget, edgeCost);
+    }
+
+    /**
+     * Split the crossings of one cluster border into contiguous entrances and pick their transitions.
+     */
+    private static List<int[]> pickTransitions(WalkableGraph map, List<int[]> crossings, boolean alongZ) {
+        crossings.sort(Comparator.<int[]>comparingInt(c -> alongOf(map, c, alongZ))
+            .thenComparingInt(c -> map.getY(c[0])));
+
+        // Several height layers can run along the same border, so keep one open run per layer
+        List<List<int[]>> runs = new ArrayList<>();
+        List<List<int[]>> open = new ArrayList<>();
+        for (int[] crossing : crossings) {
+            int along = alongOf(map, crossing, alongZ);
+            int y = map.getY(crossing[0]);
+            open.removeIf(run -> along - alongOf(map, run.get(run.size() - 1), alongZ) > 1);
+
+            List<int[]> joined = null;
+            for (List<int[]> run : open) {
+                int[] last = run.get(run.size() - 1);
+                if (Math.abs(map.getY(last[0]) - y) <= 1) {
+                    joined = run;
+                    break;
+                }
+            }
+
+            if (joined == null) {
+                joined = new ArrayList<>();
+                runs.add(joined);
+                open.add(joined);
+            }
+            joined.add(crossing);
+        }
+
+        List<int[]> transitions = new ArrayList<>();
+        for (List<int[]> run : runs) {
+            int count = (run.size() + ENTRANCE_SPACING - 1) / ENTRANCE_SPACING;
+            for (int k = 0; k < count; k++) {
+                transitions.add(run.get((2 * k + 1) * run.size() / (2 * count)));
+            }
+        }
+        return transitions;
+    }
+
+    private static int alongOf(WalkableGraph map, int[] crossing, boolean alongZ) {
+        return alongZ ? map.getZ(crossing[0]) : map.getX(crossing[0]);
+    }
+
+    private static int abstractId(Map<Integer, Integer> ids, List<Integer> nodes, int node) {
+        return ids.computeIfAbsent(node, n -> {
+            nodes.add(n);
+            return nodes.size() - 1;
+        });
+    }
+
+    /**
+     * @return true if the query spans enough clusters for the abstraction to pay off
+     */
+    public boolean isLongRange(int start, int goal) {
+        int dx = Math.abs((map.getX(start) >> CLUSTER_SHIFT) - (map.getX(goal) >> CLUSTER_SHIFT));
+        int dz = Math.abs((map.getZ(start) >> CLUSTER_SHIFT) - (map.getZ(goal) >> CLUSTER_SHIFT));
+        return Math.max(dx, dz) >= LONG_RANGE_CLUSTERS;
+    }
+
+    /**
+     * Find a path over the abstract graph and refine it cluster by cluster.
+     * @param search the search of the same map, used for the in-cluster steps
+     * @return node ids from start to goal, or null if the abstraction has no route
+     */
+    public int[] findPath(AStarSearch search, int start, int goal, float heuristicWeight) {
+        return findPath(search, start, goal, heuristicWeight, null);
+    }
+
+    /**
+     * Like {@link #findPath(AStarSearch, int, int, float)}, reporting each refined stretch as
+     * soon as it is final. Once the abstract route is known every refined prefix is part of the
+     * result, so callers can start using it before refinement finishes.
+     */
+    public int[] findPath(AStarSearch search, int start, int goal, float heuristicWeight, SegmentListener listener) {
+        int[] startMembers = clusterNodes.get(clusterOf(start));
+        int[] goalMembers = clusterNodes.get(clusterOf(goal));
+        if (startMembers == null || goalMembers == null) {
+            return null;
+        }
+
+        // Connect the endpoints to the transition nodes of their clusters
+        float[] fromStart = search.costsWithin(start, mapIds(startMembers), minX(start), minZ(start),
+            minX(start) + CLUSTER_SIZE - 1, minZ(start) + CLUSTER_SIZE - 1);
+        float[] toGoal = new float[nodes.length];
+        Arrays.fill(toGoal, Float.POSITIVE_INFINITY);
+        for (int member : goalMembers) {
+            toGoal[member] = search.costsWithin(nodes[member], new int[]{goal}, minX(goal), minZ(goal),
+                minX(goal) + CLUSTER_SIZE - 1, minZ(goal) + CLUSTER_SIZE - 1)[0];
+        }
+
+        int[] route = searchAbstract(start, goal, startMembers, fromStart, toGoal, heuristicWeight);
+        if (route == null) {
+            return null;
+        }
+
+        // Refine: transitions between clusters are single steps, everything else is an in-cluster search
+        int[] path = new int[64];
+        int length = 0;
+        int reported = 0;
+        path[length++] = start;
+        int previous = start;
+        for (int waypoint : route) {
+            if (waypoint == previous) continue;
+
+            int[] segment;
+            if (clusterOf(waypoint) == clusterOf(previous)) {
+                segment = search.searchWithin(previous, waypoint, heuristicWeight, minX(previous), minZ(previous),
+                    minX(previous) + CLUSTER_SIZE - 1, minZ(previous) + CLUSTER_SIZE - 1);
+                if (segment == null) {
+                    // Only possible if the search gave up early; finish with an unbounded search
+                    segment = search.search(previous, goal, heuristicWeight);
+                    waypoint = goal;
+                    if (segment == null) {
+                        return null;
+                    }
+                }
+            } else {
+                segment = new int[]{previous, waypoint};
+            }
+
+            if (length + segment.length > path.length) {
+                path = Arrays.copyOf(path, Math.max(path.length * 2, length + segment.length));
+            }
+            System.arraycopy(segment, 1, path, length, segment.length - 1);
+            length += segment.length - 1;
+            previous = waypoint;
+
+            // Report whenever the route is about to leave a cluster
+            if (listener != null && (waypoint == goal || clusterOf(waypoint) != clusterOf(path[reported]))) {
+                listener.onSegment(path, reported, length);
+                reported = length;
+            }
+            if (waypoint == goal) break;
+        }
+        if (listener != null && reported < length) {
+            listener.onSegment(path, reported, length);
+        }
+        return Arrays.copyOf(path, length);
+    }
+
+    /**
+     * A* over the abstract graph with the start and goal attached as virtual nodes.
+     * @return map node ids of the abstract route, ending with the goal
+     */
+    private int[] searchAbstract(int start, int goal, int[] startMembers, float[] fromStart, float[] toGoal,
+                                 float heuristicWeight) {
+        int startNode = nodes.length;
+        int goalNode = nodes.length + 1;
+        float[] g = new float[nodes.length + 2];
+        int[] parent = new int[nodes.length + 2];
+        boolean[] closed = new boolean[nodes.length + 2];
+        Arrays.fill(g, Float.POSITIVE_INFINITY);
+
+        int goalX = map.getX(goal);
+        int goalY = map.getY(goal);
+        int goalZ = map.getZ(goal);
+
+        // Entries are (f as sortable bits) << 32 | node; f is never negative so the bits order like the floats
+        PriorityQueue<Long> open = new PriorityQueue<>();
+        g[startNode] = 0;
+        parent[startNode] = -1;
+        open.add((long) Float.floatToIntBits(0) << 32 | startNode);
+
+        while (!open.isEmpty()) {
+            int current = (int) (long) open.poll();
+            if (closed[current]) continue;
+            closed[current] = true;
+
+            if (current == goalNode) {
+                List<Integer> route = new ArrayList<>();
+                for (int node = parent[goalNode]; node != startNode; node = parent[node]) {
+                    route.add(nodes[node]);
+                }
+                int[] result = new int[route.size() + 1];
+                for (int i = 0; i < route.size(); i++) {
+                    result[i] = route.get(route.size() - 1 - i);
+                }
+                result[route.size()] = goal;
+                return result;
+            }
+
+            if (current == startNode) {
+                for (int i = 0; i < startMembers.length; i++) {
+                    relax(open, g, parent, closed, current, startMembers[i], fromStart[i], heuristicWeight, goalX, goalY, goalZ);
+                }
+                continue;
+            }
+
+            for (int e = edgeStart[current]; e < edgeStart[current + 1]; e++) {
+                relax(open, g, parent, closed, current, edgeTarget[e], edgeCost[e], heuristicWeight, goalX, goalY, goalZ);
+            }
+            if (toGoal[current] != Float.POSITIVE_INFINITY) {
+                relax(open, g, parent, closed, current, goalNode, toGoal[current], heuristicWeight, goalX, goalY, goalZ);
+            }
+        }
+        return null;
+    }
+
+    private void relax(PriorityQueue<Long> open, float[] g, int[] parent, boolean[] closed, int from, int to,
+                       float cost, float heuristicWeight, int goalX, int goalY, int goalZ) {
+        if (cost == Float.POSITIVE_INFINITY || closed[to]) return;
+
+        float tentative = g[from] + cost;
+        if (tentative >= g[to]) return;
+
+        g[to] = tentative;
+        parent[to] = from;
+        float h = to < nodes.length
+            ? heuristicWeight * AStarSearch.estimate(map.getX(nodes[to]) - goalX, map.getY(nodes[to]) - goalY, map.getZ(nodes[to]) - goalZ)
+            : 0;
+        open.add((long) Float.floatToIntBits(tentative + h) << 32 | to);
+    }
+
+    private int[] mapIds(int[] members) {
+        int[] ids = new int[members.length];
+        for (int i = 0; i < members.length; i++) {
+            ids[i] = nodes[members[i]];
+        }
+        return ids;
+    }
+
+    private long clusterOf(int node) {
+        return clusterKey(map.getX(node), map.getZ(node));
+    }
+
+    private int minX(int node) {
+        return map.getX(node) >> CLUSTER_SHIFT << CLUSTER_SHIFT;
+    }
+
+    private int minZ(int node) {
+        return map.getZ(node) >> CLUSTER_SHIFT << CLUSTER_SHIFT;
+    }
+
+    private static long clusterKey(int x, int z) {
+        return ((long) (x >> CLUSTER_SHIFT) << 32) | ((z >> CLUSTER_SHIFT) & 0xFFFFFFFFL);
+    }
+
+    public int getNodeCount() {
+        return nodes.length;
+    }
+
+    public int getEdgeCount() {
+        return edgeTarget.length;
+    }
+
+    /**
+     * @return approximate heap size of the abstraction in bytes
+     */
+    public long getMemoryFootprint() {
+        long bytes = 4L * (nodes.length + edgeStart.length + edgeTarget.length + edgeCost.length);
+        for (int[] members : clusterNodes.values()) {
+            bytes += 64 + 4L * members.length; // Entry, key and array headers
+        }
+        return bytes;
+    }
+
+    private static HierarchicalGraph read(VoxelMapStore map, Path file) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != map.getFingerprint()
+                || in.readInt() != CLUSTER_SHIFT) {
+                return null;
+            }
+
+            int[] nodes = new int[in.readInt()];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = in.readInt();
+            }
+            int[] edgeStart = new int[nodes.length + 1];
+            for (int i = 0; i < edgeStart.length; i++) {
+                edgeStart[i] = in.readInt();
+            }
+            int[] edgeTarget = new int[edgeStart[nodes.length]];
+            float[] edgeCost = new float[edgeTarget.length];
+            for (int i = 0; i < edgeTarget.length; i++) {
+                edgeTarget[i] = in.readInt();
+                edgeCost[i] = in.readFloat();
+            }
+            return new HierarchicalGraph(map, nodes, edgeStart, edgeTarget, edgeCost);
+        } catch (IOException e) {
+            WieselClient.LOGGER.warn("Discarding unreadable path abstraction {}", file, e);
+            return null;
+        }
+    }
+
+    private void write(Path file, long fingerprint) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint);
+            out.writeInt(CLUSTER_SHIFT);
+            out.writeInt(nodes.length);
+            for (int node : nodes) {
+                out.writeInt(node);
+            }
+            for (int start : edgeStart) {
+                out.writeInt(start);
+            }
+            for (int i = 0; i < edgeTarget.length; i++) {
+                out.writeInt(edgeTarget[i]);
+                out.writeFloat(edgeCost[i]);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Receives consecutive stretches of a path while it is being refined.
+     */
+    public interface SegmentListener {
+        /**
+         * @param path the path so far; only {@code [from, to)} is new
+         */
+        void onSegment(int[] path, int from, int to);
+    }
+
+    private static final class Edge {
+        final int from;
+        final int to;
+        final float cost;
+
+        Edge(int from, int to, float cost) {
+            this.from = from;
+            this.to = to;
+            this.cost = cost;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.wiesel.client.pathfinder.engine;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Walkable node set of an extracted map, parsed into flat on-heap arrays.
+ * Node ids are dense (0 to size - 1). Used as the conversion source for {@link VoxelMapStore}.
+ *
+ * Every *.json file below maps/{name}/ is read, except the block transparency overrides
+ * ({@link #TRANSPARENCY_FILE}) that share the directory. A file is either an array of nodes or an
+ * object with a "nodes" array; nodes use the same fields as the pathfinder API responses
+ * (x, y, z, top_bound, path_weight, is_liquid).
+ */
+public class MapData implements WalkableGraph {
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    /**
+     * Per-map overrides for {@link com.wiesel.client.rotation.BlockTransparency}; not a node file.
+     */
+    public static final String TRANSPARENCY_FILE = "transparency.json";
+
+    private final String name;
+    private int size = 0;
+    private int[] xs = new int[INITIAL_CAPACITY];
+    private int[] ys = new int[INITIAL_CAPACITY];
+    private int[] zs = new int[INITIAL_CAPACITY];
+    private float[] topBounds = new float[INITIAL_CAPACITY];
+    private float[] pathWeights = new float[INITIAL_CAPACITY];
+    private final BitSet liquid = new BitSet();
+    private final Long2IntOpenHashMap index = new Long2IntOpenHashMap(INITIAL_CAPACITY);
+
+    private MapData(String name) {
+        this.name = name;
+        this.index.defaultReturnValue(-1);
+    }
+
+    /**
+     * Load all node files of an extracted map directory.
+     */
+    public static MapData load(String name, File mapDir) throws IOException {
+        if (!mapDir.isDirectory()) {
+            throw new IOException("Map directory not found: " + mapDir.getAbsolutePath());
+        }
+
+        MapData data = new MapData(name);
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(mapDir.toPath())) {
+            files = walk.filter(MapData::isNodeFile).sorted().collect(Collectors.toList());
+        }
+
+        for (Path file : files) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                data.readFile(new JsonReader(reader));
+            }
+        }
+
+        if (data.size == 0) {
+            throw new IOException("Map '" + name + "' contains no walkable nodes");
+        }
+        data.trim();
+        return data;
+    }
+
+    /**
+     * @return whether a file below a map directory holds nodes of the map
+     */
+    public static boolean isNodeFile(Path file) {
+        return file.toString().endsWith(".json") && !TRANSPARENCY_FILE.equals(file.getFileName().toString());
+    }
+
+    private void readFile(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+            readNodeArray(reader);
+            return;
+        }
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("nodes".equals(reader.nextName())) {
+                readNodeArray(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private void readNodeArray(JsonReader reader) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            int x = 0, y = 0, z = 0;
+            float topBound = 0, pathWeight = 0;
+            boolean isLiquid = false;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "x": x = reader.nextInt(); break;
+                    case "y": y = reader.nextInt(); break;
+                    case "z": z = reader.nextInt(); break;
+                    case "top_bound": topBound = (float) reader.nextDouble(); break;
+                    case "path_weight": pathWeight = (float) reader.nextDouble(); break;
+                    case "is_liquid": isLiquid = reader.nextBoolean(); break;
+                    default: reader.skipValue(); break;
+                }
+            }
+            reader.endObject();
+
+            add(x, y, z, topBound, pathWeight, isLiquid);
+        }
+        reader.endArray();
+    }
+
+    private void add(int x, int y, int z, float topBound, float pathWeight, boolean isLiquid) {
+        long key = pack(x, y, z);
+        if (index.containsKey(key)) {
+            return;
+        }
+
+        if (size == xs.length) {
+            int capacity = size * 2;
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            zs = Arrays.copyOf(zs, capacity);
+            topBounds = Arrays.copyOf(topBounds, capacity);
+            pathWeights = Arrays.copyOf(pathWeights, capacity);
+        }
+
+        xs[size] = x;
+        ys[size] = y;
+        zs[size] = z;
+        topBounds[size] = topBound;
+        pathWeights[size] = Math.max(0, pathWeight);
+        liquid.set(size, isLiquid);
+        index.put(key, size);
+        size++;
+    }
+
+    private void trim() {
+        xs = Arrays.copyOf(xs, size);
+        ys = Arrays.copyOf(ys, size);
+        zs = Arrays.copyOf(zs, size);
+        topBounds = Arrays.copyOf(topBounds, size);
+        pathWeights = Arrays.copyOf(pathWeights, size);
+        index.trim();
+    }
+
+    /**
+     * Pack block coordinates into a single key (same bit layout as BlockPos.asLong).
+     */
+    public static long pack(int x, int y, int z) {
+        return ((long) x & 0x3FFFFFFL) << 38 | ((long) z & 0x3FFFFFFL) << 12 | ((long) y & 0xFFFL);
+    }
+
+    @Override
+    public int indexOf(int x, int y, int z) {
+        return index.get(pack(x, y, z));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getX(int idx) {
+        return xs[idx];
+    }
+
+    @Override
+    public int getY(int idx) {
+        return ys[idx];
+    }
+
+    @Override
+    public int getZ(int idx) {
+        return zs[idx];
+    }
+
+    @Override
+    public float getTopBound(int idx) {
+        return topBounds[idx];
+    }
+
+    @Override
+    public float getPathWeight(int idx) {
+        return pathWeights[idx];
+    }
+
+    @Override
+    public boolean isLiquid(int idx) {
+        return liquid.get(idx);
+    }
+}
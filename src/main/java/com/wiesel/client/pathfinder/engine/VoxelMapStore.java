@@ -0,0 +1,372 @@
+package com.wiesel.client.pathfinder.engine;
+
+import com.wiesel.client.WieselClient;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Walkable node set of a map backed by a memory-mapped file (maps/{name}/voxels.bin).
+ *
+ * The file is built once from the map's JSON files and rebuilt when they change. Nodes are
+ * grouped by 16x16 column regions, so a search only faults in the pages of the regions it
+ * actually touches and the node data never lives on the Java heap.
+ *
+ * Layout (big endian):
+ * - header: magic, version, source fingerprint, node count, region count, table capacity
+ * - region table: open-addressing hash of region key to region ordinal (linear probing)
+ * - region directory: first node id of every region
+ * - column index: 257 node offsets per region, one per column plus an end marker
+ * - nodes: fixed-size records sorted by region, column and y
+ *
+ * Node ids are record indices, so they are dense (0 to size - 1). Reads are absolute and
+ * the store is safe to share between threads.
+ */
+public class VoxelMapStore implements WalkableGraph, AutoCloseable {
+    public static final String FILE_NAME = "voxels.bin";
+
+    private static final int MAGIC = 0x574F5658; // "WVOX"
+    private static final int VERSION = 1;
+
+    private static final int REGION_SHIFT = 4;
+    private static final int REGION_MASK = (1 << REGION_SHIFT) - 1;
+    private static final int COLUMNS = 1 << (2 * REGION_SHIFT);
+
+    private static final int HEADER_BYTES = 32;
+    private static final int TABLE_ENTRY_BYTES = 16;
+    private static final int COLUMN_INDEX_BYTES = (COLUMNS + 1) * 4;
+
+    // int x, int z, float topBound, float pathWeight, short y, byte flags, byte padding
+    private static final int NODE_BYTES = 20;
+    private static final int FLAG_LIQUID = 1;
+
+    private final String name;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int nodeCount;
+    private final int regionCount;
+    private final int tableCapacity;
+    private final long directoryOffset;
+    private final long columnsOffset;
+    private final long nodesOffset;
+
+    private VoxelMapStore(String name, FileChannel channel) throws IOException {
+        this.name = name;
+        this.channel = channel;
+        if (channel.size() > Integer.MAX_VALUE) {
+            throw new IOException("Voxel file for map '" + name + "' is too large to map");
+        }
+        this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        this.buffer.order(ByteOrder.BIG_ENDIAN);
+
+        this.nodeCount = buffer.getInt(16);
+        this.regionCount = buffer.getInt(20);
+        this.tableCapacity = buffer.getInt(24);
+        this.directoryOffset = HEADER_BYTES + (long) tableCapacity * TABLE_ENTRY_BYTES;
+        this.columnsOffset = directoryOffset + (long) regionCount * 4;
+        this.nodesOffset = columnsOffset + (long) regionCount * COLUMN_INDEX_BYTES;
+
+        if (nodesOffset + (long) nodeCount * NODE_BYTES > channel.size()) {
+            throw new IOException("Voxel file for map '" + name + "' is truncated");
+        }
+    }
+
+    /**
+     * Open the voxel file of an extracted map, (re)building it from the JSON node files if it
+     * is missing or out of date.
+     */
+    public static VoxelMapStore open(String name, File mapDir) throws IOException {
+        if (!mapDir.isDirectory()) {
+            throw new IOException("Map directory not found: " + mapDir.getAbsolutePath());
+        }
+
+        Path file = mapDir.toPath().resolve(FILE_NAME);
+        long fingerprint = fingerprint(mapDir.toPath());
+
+        if (!isCurrent(file, fingerprint)) {
+            long start = System.currentTimeMillis();
+            MapData source = MapData.load(name, mapDir);
+            write(source, fingerprint, file);
+            WieselClient.LOGGER.info("Built voxel file for map '{}': {} nodes, {} KB in {}ms",
+                name, source.size(), Files.size(file) / 1024, System.currentTimeMillis() - start);
+        }
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new VoxelMapStore(name, channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Cheap change detection over the node files: names, sizes and modification times.
+     */
+    private static long fingerprint(Path mapDir) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(mapDir)) {
+            files = walk.filter(MapData::isNodeFile).sorted().collect(Collectors.toList());
+        }
+
+        long hash = 1125899906842597L;
+        for (Path file : files) {
+            hash = 31 * hash + mapDir.relativize(file).toString().hashCode();
+            hash = 31 * hash + Files.size(file);
+            hash = 31 * hash + Files.getLastModifiedTime(file).toMillis();
+        }
+        return hash;
+    }
+
+    private static boolean isCurrent(Path file, long fingerprint) {
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                return false;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            channel.read(header, 0);
+            return header.getInt(0) == MAGIC && header.getInt(4) == VERSION && header.getLong(8) == fingerprint;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Write the voxel file for a parsed map. The file is written next to the target and
+     * moved into place so a crash never leaves a half-written file behind.
+     */
+    private static void write(MapData source, long fingerprint, Path target) throws IOException {
+        int size = source.size();
+
+        // Sort node ids by region, then column, then y
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int cmp = Long.compare(regionKey(source.getX(a), source.getZ(a)), regionKey(source.getX(b), source.getZ(b)));
+            if (cmp != 0) return cmp;
+            cmp = Integer.compare(cell(source.getX(a), source.getZ(a)), cell(source.getX(b), source.getZ(b)));
+            if (cmp != 0) return cmp;
+            return Integer.compare(source.getY(a), source.getY(b));
+        });
+
+        // Region boundaries in sorted order
+        int regionCount = 0;
+        int[] regionFirst = new int[Math.max(1, size)];
+        long previousRegion = 0;
+        for (int i = 0; i < size; i++) {
+            int id = order[i];
+            long region = regionKey(source.getX(id), source.getZ(id));
+            if (i == 0 || region != previousRegion) {
+                regionFirst[regionCount++] = i;
+                previousRegion = region;
+            }
+        }
+
+        int tableCapacity = Integer.highestOneBit(Math.max(1, regionCount * 2 - 1)) << 1;
+        long directoryOffset = HEADER_BYTES + (long) tableCapacity * TABLE_ENTRY_BYTES;
+        long columnsOffset = directoryOffset + (long) regionCount * 4;
+        long nodesOffset = columnsOffset + (long) regionCount * COLUMN_INDEX_BYTES;
+        long totalBytes = nodesOffset + (long) size * NODE_BYTES;
+        if (totalBytes > Integer.MAX_VALUE) {
+            throw new IOException("Map '" + source.getName() + "' is too large for a voxel file");
+        }
+
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, totalBytes);
+
+            out.putInt(0, MAGIC);
+            out.putInt(4, VERSION);
+            out.putLong(8, fingerprint);
+            out.putInt(16, size);
+            out.putInt(20, regionCount);
+            out.putInt(24, tableCapacity);
+
+            for (int r = 0; r < regionCount; r++) {
+                int first = regionFirst[r];
+                int end = r + 1 < regionCount ? regionFirst[r + 1] : size;
+                int firstId = order[first];
+                long key = regionKey(source.getX(firstId), source.getZ(firstId));
+
+                // Region table entry
+                int slot = mix(key) & (tableCapacity - 1);
+                while (out.getInt((int) (HEADER_BYTES + (long) slot * TABLE_ENTRY_BYTES + 8)) != 0) {
+                    slot = (slot + 1) & (tableCapacity - 1);
+                }
+                int entry = (int) (HEADER_BYTES + (long) slot * TABLE_ENTRY_BYTES);
+                out.putLong(entry, key);
+                out.putInt(entry + 8, r + 1);
+
+                out.putInt((int) (directoryOffset + (long) r * 4), first);
+
+                // Column index: offset of the first node of every column, relative to the region
+                int columns = (int) (columnsOffset + (long) r * COLUMN_INDEX_BYTES);
+                int i = first;
+                for (int c = 0; c <= COLUMNS; c++) {
+                    while (i < end && cell(source.getX(order[i]), source.getZ(order[i])) < c) {
+                        i++;
+                    }
+                    out.putInt(columns + c * 4, i - first);
+                }
+            }
+
+            for (int i = 0; i < size; i++) {
+                int id = order[i];
+                int record = (int) (nodesOffset + (long) i * NODE_BYTES);
+                out.putInt(record, source.getX(id));
+                out.putInt(record + 4, source.getZ(id));
+                out.putFloat(record + 8, source.getTopBound(id));
+                out.putFloat(record + 12, source.getPathWeight(id));
+                out.putShort(record + 16, (short) source.getY(id));
+                out.put(record + 18, (byte) (source.isLiquid(id) ? FLAG_LIQUID : 0));
+            }
+
+            out.force();
+        }
+
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long regionKey(int x, int z) {
+        return ((long) (x >> REGION_SHIFT) << 32) | ((z >> REGION_SHIFT) & 0xFFFFFFFFL);
+    }
+
+    private static int cell(int x, int z) {
+        return (z & REGION_MASK) << REGION_SHIFT | (x & REGION_MASK);
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * @return the ordinal of the region containing the column, or -1 if it has no nodes
+     */
+    private int findRegion(int x, int z) {
+        long key = regionKey(x, z);
+        int mask = tableCapacity - 1;
+        int slot = mix(key) & mask;
+        while (true) {
+            int entry = (int) (HEADER_BYTES + (long) slot * TABLE_ENTRY_BYTES);
+            int ordinal = buffer.getInt(entry + 8);
+            if (ordinal == 0) {
+                return -1;
+            }
+            if (buffer.getLong(entry) == key) {
+                return ordinal - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    @Override
+    public int indexOf(int x, int y, int z) {
+        int region = findRegion(x, z);
+        if (region < 0) {
+            return -1;
+        }
+
+        int first = buffer.getInt((int) (directoryOffset + (long) region * 4));
+        int columns = (int) (columnsOffset + (long) region * COLUMN_INDEX_BYTES);
+        int c = cell(x, z);
+        int from = first + buffer.getInt(columns + c * 4);
+        int to = first + buffer.getInt(columns + (c + 1) * 4);
+
+        // Columns hold only a handful of walkable heights, a linear scan beats a binary search
+        for (int id = from; id < to; id++) {
+            int nodeY = getY(id);
+            if (nodeY == y) return id;
+            if (nodeY > y) break;
+        }
+        return -1;
+    }
+
+    private int record(int id) {
+        return (int) (nodesOffset + (long) id * NODE_BYTES);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int size() {
+        return nodeCount;
+    }
+
+    /**
+     * @return the fingerprint of the JSON files this store was built from
+     */
+    public long getFingerprint() {
+        return buffer.getLong(8);
+    }
+
+    public int getRegionCount() {
+        return regionCount;
+    }
+
+    /**
+     * @return size of the mapped file in bytes
+     */
+    public long getMappedBytes() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public int getX(int id) {
+        return buffer.getInt(record(id));
+    }
+
+    @Override
+    public int getY(int id) {
+        return buffer.getShort(record(id) + 16);
+    }
+
+    @Override
+    public int getZ(int id) {
+        return buffer.getInt(record(id) + 4);
+    }
+
+    @Override
+    public float getTopBound(int id) {
+        return buffer.getFloat(record(id) + 8);
+    }
+
+    @Override
+    public float getPathWeight(int id) {
+        return buffer.getFloat(record(id) + 12);
+    }
+
+    @Override
+    public boolean isLiquid(int id) {
+        return (buffer.get(record(id) + 18) & FLAG_LIQUID) != 0;
+    }
+
+    /**
+     * Close the underlying file. The mapping itself is released once the store is unreachable.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,57 @@
+package com.wiesel.client.pathfinder.engine;
+
+/**
+ * Read access to the walkable nodes of a map. Nodes are addressed by an int id that is
+ * stable for the lifetime of the graph; ids are not necessarily dense.
+ */
+public interface WalkableGraph {
+    /**
+     * @return the node id at the given position, or -1 if it is not walkable
+     */
+    int indexOf(int x, int y, int z);
+
+    int getX(int id);
+
+    int getY(int id);
+
+    int getZ(int id);
+
+    float getTopBound(int id);
+
+    float getPathWeight(int id);
+
+    boolean isLiquid(int id);
+
+    /**
+     * @return the number of walkable nodes
+     */
+    int size();
+
+    default boolean isWalkable(int x, int y, int z) {
+        return indexOf(x, y, z) >= 0;
+    }
+
+    /**
+     * Find the walkable node closest to a position, searching a small box around it.
+     * @return the node id, or -1 if nothing walkable is within range
+     */
+    default int findNearest(int x, int y, int z, int horizontalRadius, int verticalRadius) {
+        int best = -1;
+        int bestDist = Integer.MAX_VALUE;
+        for (int dx = -horizontalRadius; dx <= horizontalRadius; dx++) {
+            for (int dz = -horizontalRadius; dz <= horizontalRadius; dz++) {
+                for (int dy = -verticalRadius; dy <= verticalRadius; dy++) {
+                    int dist = dx * dx + dy * dy + dz * dz;
+                    if (dist >= bestDist) continue;
+
+                    int id = indexOf(x + dx, y + dy, z + dz);
+                    if (id >= 0) {
+                        bestDist = dist;
+                        best = id;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+}
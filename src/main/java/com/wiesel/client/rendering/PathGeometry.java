@@ -0,0 +1,136 @@
+package com.wiesel.client.rendering;
+
+import java.util.List;
+
+/**
+ * CPU-side line geometry of a rendered path, split into chunks of consecutive nodes.
+ *
+ * Every chunk has a bounding box for culling and two levels of detail: the full lines with node
+ * highlights, and a simplified polyline for when it is far away. Positions are relative to
+ * {@link #getOriginX()} etc. (the first node) so they stay precise as floats far from the world
+ * origin.
+ */
+public class PathGeometry {
+    public static final PathGeometry EMPTY = new PathGeometry(0, 0, 0, List.of());
+
+    private final int originX;
+    private final int originY;
+    private final int originZ;
+    private final List<Chunk> chunks;
+
+    PathGeometry(int originX, int originY, int originZ, List<Chunk> chunks) {
+        this.originX = originX;
+        this.originY = originY;
+        this.originZ = originZ;
+        this.chunks = chunks;
+    }
+
+    public int getOriginX() {
+        return originX;
+    }
+
+    public int getOriginY() {
+        return originY;
+    }
+
+    public int getOriginZ() {
+        return originZ;
+    }
+
+    public List<Chunk> getChunks() {
+        return chunks;
+    }
+
+    public boolean isEmpty() {
+        return chunks.isEmpty();
+    }
+
+    /**
+     * @return vertices of all chunks at full detail
+     */
+    public int getVertexCount() {
+        int count = 0;
+        for (Chunk chunk : chunks) {
+            count += chunk.full.getVertexCount();
+        }
+        return count;
+    }
+
+    public static class Chunk {
+        // Block bounds (inclusive minimum, exclusive maximum), in world coordinates
+        private final int minX, minY, minZ, maxX, maxY, maxZ;
+        private final Lod full;
+        private final Lod simplified;
+
+        Chunk(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, Lod full, Lod simplified) {
+            this.minX = minX;
+            this.minY = minY;
+            this.minZ = minZ;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.maxZ = maxZ;
+            this.full = full;
+            this.simplified = simplified;
+        }
+
+        public int getMinX() { return minX; }
+        public int getMinY() { return minY; }
+        public int getMinZ() { return minZ; }
+        public int getMaxX() { return maxX; }
+        public int getMaxY() { return maxY; }
+        public int getMaxZ() { return maxZ; }
+
+        public Lod getFull() {
+            return full;
+        }
+
+        public Lod getSimplified() {
+            return simplified;
+        }
+
+        /**
+         * @return squared distance from a point to the chunk's bounding box (0 inside it)
+         */
+        public double distanceSq(double x, double y, double z) {
+            double dx = Math.max(0, Math.max(minX - x, x - maxX));
+            double dy = Math.max(0, Math.max(minY - y, y - maxY));
+            double dz = Math.max(0, Math.max(minZ - z, z - maxZ));
+            return dx * dx + dy * dy + dz * dz;
+        }
+    }
+
+    /**
+     * Vertex pairs (lines) of position and ARGB color.
+     */
+    public static class Lod {
+        private final float[] positions; // x, y, z per vertex
+        private final int[] colors;      // ARGB per vertex
+        private final int vertexCount;
+
+        Lod(float[] positions, int[] colors, int vertexCount) {
+            this.positions = positions;
+            this.colors = colors;
+            this.vertexCount = vertexCount;
+        }
+
+        public int getVertexCount() {
+            return vertexCount;
+        }
+
+        public float getX(int vertex) {
+            return positions[vertex * 3];
+        }
+
+        public float getY(int vertex) {
+            return positions[vertex * 3 + 1];
+        }
+
+        public float getZ(int vertex) {
+            return positions[vertex * 3 + 2];
+        }
+
+        public int getColor(int vertex) {
+            return colors[vertex];
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.wiesel.client.rendering;
+
+import com.wiesel.client.config.WieselConfig;
+import com.wiesel.client.pathfinder.PathBuffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds {@link PathGeometry} for a path and keeps it until the path or the render settings
+ * it depends on change. Has no rendering dependencies, so it can be exercised headlessly.
+ */
+public class PathGeometryBuilder {
+    private static final float LINE_ALPHA = 0.8f;
+    private static final int VERTICES_PER_BOX = 24; // 6 faces, 2 lines each
+    static final int CHUNK_NODES = 64;               // Segments per culling chunk
+    static final double SIMPLIFY_TOLERANCE = 1.0;    // Blocks the far polyline may deviate from the path
+
+    private PathGeometry geometry = PathGeometry.EMPTY;
+    private int version = 0;
+
+    // What the current geometry was built from
+    private PathBuffer builtPath = null;
+    private int builtSize = -1;
+    private int builtLineColor;
+    private int builtHighlightColor;
+    private int builtInterval;
+    private float builtAlpha;
+
+    /**
+     * @return geometry for the path, rebuilt only if the path (or its length) or the settings changed
+     */
+    public PathGeometry update(PathBuffer path, WieselConfig.RenderSettings settings) {
+        if (path == builtPath && path != null && path.size() == builtSize
+                && settings.pathLineColor == builtLineColor
+                && settings.nodeHighlightColor == builtHighlightColor
+                && settings.nodeHighlightInterval == builtInterval
+                && settings.nodeAlpha == builtAlpha) {
+            return geometry;
+        }
+
+        geometry = path == null ? PathGeometry.EMPTY : build(path, settings);
+        builtPath = path;
+        builtSize = path == null ? -1 : path.size();
+        builtLineColor = settings.pathLineColor;
+        builtHighlightColor = settings.nodeHighlightColor;
+        builtInterval = settings.nodeHighlightInterval;
+        builtAlpha = settings.nodeAlpha;
+        version++;
+        return geometry;
+    }
+
+    /**
+     * Incremented every time the geometry is rebuilt.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public void clear() {
+        if (builtPath != null) {
+            update(null, new WieselConfig.RenderSettings());
+        }
+    }
+
+    /**
+     * Lines between consecutive nodes, plus an outlined box on every interval-th node and the last,
+     * in chunks of {@link #CHUNK_NODES} segments. Far chunks use a Douglas-Peucker simplified polyline.
+     */
+    public static PathGeometry build(PathBuffer path, WieselConfig.RenderSettings settings) {
+        int n = path.size();
+        if (n == 0) {
+            return PathGeometry.EMPTY;
+        }
+
+        int interval = Math.max(1, settings.nodeHighlightInterval);
+        int lineColor = argb(settings.pathLineColor, LINE_ALPHA);
+        int boxColor = argb(settings.nodeHighlightColor, settings.nodeAlpha);
+        int originX = path.getX(0), originY = path.getY(0), originZ = path.getZ(0);
+
+        List<PathGeometry.Chunk> chunks = new ArrayList<>();
+        boolean[] keep = new boolean[CHUNK_NODES + 1];
+        for (int start = 0; start < n; start += CHUNK_NODES) {
+            // A chunk covers the segments start -> end; consecutive chunks share a node
+            int end = Math.min(start + CHUNK_NODES, n - 1);
+            boolean lastChunk = end == n - 1;
+
+            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+            int boxes = 0;
+            for (int i = start; i <= end; i++) {
+                minX = Math.min(minX, path.getX(i));
+                minY = Math.min(minY, path.getY(i));
+                minZ = Math.min(minZ, path.getZ(i));
+                maxX = Math.max(maxX, path.getX(i) + 1);
+                maxY = Math.max(maxY, path.getY(i) + 1);
+                maxZ = Math.max(maxZ, path.getZ(i) + 1);
+                if (hasBox(i, end, lastChunk, interval)) {
+                    boxes++;
+                }
+            }
+
+            Geometry full = new Geometry(originX, originY, originZ, 2 * (end - start) + VERTICES_PER_BOX * boxes);
+            for (int i = start; i < end; i++) {
+                full.line(path, i, i + 1, lineColor);
+            }
+            for (int i = start; i <= end; i++) {
+                if (hasBox(i, end, lastChunk, interval)) {
+                    full.box(path.getX(i), path.getY(i), path.getZ(i), boxColor);
+                }
+            }
+
+            int kept = simplify(path, start, end, SIMPLIFY_TOLERANCE, keep);
+            Geometry simplified = new Geometry(originX, originY, originZ,
+                2 * (kept - 1) + (lastChunk ? VERTICES_PER_BOX : 0));
+            int previous = start;
+            for (int i = start + 1; i <= end; i++) {
+                if (keep[i - start]) {
+                    simplified.line(path, previous, i, lineColor);
+                    previous = i;
+                }
+            }
+            // The destination stays visible from afar
+            if (lastChunk) {
+                simplified.box(path.getX(end), path.getY(end), path.getZ(end), boxColor);
+            }
+
+            chunks.add(new PathGeometry.Chunk(minX, minY, minZ, maxX, maxY, maxZ, full.finish(), simplified.finish()));
+            if (lastChunk) {
+                break;
+            }
+        }
+
+        return new PathGeometry(originX, originY, originZ, chunks);
+    }
+
+    private static boolean hasBox(int i, int end, boolean lastChunk, int interval) {
+        if (i == end && !lastChunk) {
+            return false; // Belongs to the next chunk
+        }
+        // Always highlight the last node
+        return i % interval == 0 || (lastChunk && i == end);
+    }
+
+    /**
+     * Douglas-Peucker: mark the nodes of start..end to keep so the polyline through them stays
+     * within the tolerance of the original.
+     * @param keep flags indexed from start; the endpoints are always kept
+     * @return number of kept nodes
+     */
+    static int simplify(PathBuffer path, int start, int end, double tolerance, boolean[] keep) {
+        Arrays.fill(keep, 0, end - start + 1, false);
+        keep[0] = true;
+        keep[end - start] = true;
+        int kept = end > start ? 2 : 1;
+
+        double toleranceSq = tolerance * tolerance;
+        int[] stack = new int[2 * (end - start + 1)];
+        int top = 0;
+        stack[top++] = start;
+        stack[top++] = end;
+        while (top > 0) {
+            int b = stack[--top];
+            int a = stack[--top];
+            if (b - a < 2) {
+                continue;
+            }
+
+            int farthest = -1;
+            double farthestSq = toleranceSq;
+            for (int i = a + 1; i < b; i++) {
+                double distanceSq = distanceSqToSegment(path, i, a, b);
+                if (distanceSq > farthestSq) {
+                    farthestSq = distanceSq;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0) {
+                keep[farthest - start] = true;
+                kept++;
+                stack[top++] = a;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = b;
+            }
+        }
+        return kept;
+    }
+
+    private static double distanceSqToSegment(PathBuffer path, int p, int a, int b) {
+        double ax = path.getX(a), ay = path.getY(a), az = path.getZ(a);
+        double abx = path.getX(b) - ax, aby = path.getY(b) - ay, abz = path.getZ(b) - az;
+        double apx = path.getX(p) - ax, apy = path.getY(p) - ay, apz = path.getZ(p) - az;
+
+        double lengthSq = abx * abx + aby * aby + abz * abz;
+        double t = lengthSq == 0 ? 0 : Math.max(0, Math.min(1, (apx * abx + apy * aby + apz * abz) / lengthSq));
+        double dx = apx - abx * t, dy = apy - aby * t, dz = apz - abz * t;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static int argb(int rgb, float alpha) {
+        int a = Math.round(Math.max(0, Math.min(1, alpha)) * 255);
+        return a << 24 | rgb & 0xFFFFFF;
+    }
+
+    private static class Geometry {
+        final int originX, originY, originZ;
+        float[] positions;
+        int[] colors;
+        int count = 0;
+
+        Geometry(int originX, int originY, int originZ, int capacity) {
+            this.originX = originX;
+            this.originY = originY;
+            this.originZ = originZ;
+            this.positions = new float[capacity * 3];
+            this.colors = new int[capacity];
+        }
+
+        void vertex(float x, float y, float z, int color) {
+            positions[count * 3] = x - originX;
+            positions[count * 3 + 1] = y - originY;
+            positions[count * 3 + 2] = z - originZ;
+            colors[count] = color;
+            count++;
+        }
+
+        void line(PathBuffer path, int from, int to, int color) {
+            vertex(path.getX(from) + 0.5f, path.getY(from) + 0.5f, path.getZ(from) + 0.5f, color);
+            vertex(path.getX(to) + 0.5f, path.getY(to) + 0.5f, path.getZ(to) + 0.5f, color);
+        }
+
+        void box(int x, int y, int z, int color) {
+            float x1 = x, y1 = y, z1 = z;
+            float x2 = x + 1, y2 = y + 1, z2 = z + 1;
+
+            quad(x1, y1, z1, x2, y1, z2, color); // Bottom
+            quad(x1, y2, z1, x2, y2, z2, color); // Top
+            quad(x1, y1, z1, x2, y2, z1, color); // North
+            quad(x1, y1, z2, x2, y2, z2, color); // South
+            quad(x1, y1, z1, x1, y2, z2, color); // West
+            quad(x2, y1, z1, x2, y2, z2, color); // East
+        }
+
+        void quad(float x1, float y1, float z1, float x2, float y2, float z2, int color) {
+            // 2 lines forming an X across the quad for visibility
+            vertex(x1, y1, z1, color);
+            vertex(x2, y2, z2, color);
+            vertex(x1, y2, z1, color);
+            vertex(x2, y1, z2, color);
+        }
+
+        PathGeometry.Lod finish() {
+            if (positions.length != count * 3) {
+                positions = Arrays.copyOf(positions, count * 3);
+                colors = Arrays.copyOf(colors, count);
+            }
+            return new PathGeometry.Lod(positions, colors, count);
+        }
+    }
+}
@@ -2,55 +2,99 @@ package com.wiesel.client.rendering;
 
 import com.mojang.blaze3d.systems.RenderSystem;
 import com.wiesel.client.config.ConfigManager;
-import com.wiesel.client.pathfinder.PathNode;
+import com.wiesel.client.config.WieselConfig;
 import com.wiesel.client.pathfinder.PathfindResponse;
 import com.wiesel.client.pathfinder.PathfinderManager;
 import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.gl.ShaderProgram;
+import net.minecraft.client.gl.VertexBuffer;
 import net.minecraft.client.render.*;
 import net.minecraft.client.util.math.MatrixStack;
+import net.minecraft.util.math.Box;
 import net.minecraft.util.math.Vec3d;
 import org.joml.Matrix4f;
 
-import java.awt.*;
 import java.util.List;
 
+/**
+ * Draws the last found path. The geometry is built once per path (or render config change) by
+ * {@link PathGeometryBuilder} and kept in GPU vertex buffers; frames only issue draw calls.
+ *
+ * The path is drawn in chunks: chunks outside the frustum or the render distance are skipped,
+ * and chunks further than the configured detail distance use their simplified polyline, so
+ * the vertices drawn per frame depend on what is around the player, not on the path length.
+ */
 public class PathRenderer {
+    private static final PathGeometryBuilder geometryBuilder = new PathGeometryBuilder();
 
-    public static void render(MatrixStack matrices, float tickDelta) {
+    // Per chunk of the current geometry; buffers are uploaded the first time they are drawn
+    private static int uploadedVersion = -1;
+    private static Box[] chunkBounds = new Box[0];
+    private static VertexBuffer[] fullBuffers = new VertexBuffer[0];
+    private static VertexBuffer[] simplifiedBuffers = new VertexBuffer[0];
+
+    private static int lastFrameVertices = 0;
+
+    public static void render(MatrixStack matrices, float tickDelta, Frustum frustum) {
+        lastFrameVertices = 0;
         PathfindResponse path = PathfinderManager.getLastPath();
-        if (path == null || path.path == null || path.path.isEmpty()) {
+        if (path == null || path.pathBuffer == null || path.pathBuffer.isEmpty()) {
             return;
         }
 
-        if (!ConfigManager.getConfig().render.enabled) {
+        WieselConfig.RenderSettings settings = ConfigManager.getConfig().render;
+        if (!settings.enabled) {
             return;
         }
 
         MinecraftClient mc = MinecraftClient.getInstance();
         if (mc.player == null) return;
 
+        PathGeometry geometry = geometryBuilder.update(path.pathBuffer, settings);
+        if (geometry.isEmpty()) {
+            return;
+        }
+        if (uploadedVersion != geometryBuilder.getVersion()) {
+            reset(geometry);
+        }
+
         Vec3d camera = mc.gameRenderer.getCamera().getPos();
+        double renderDistance = mc.options.getClampedViewDistance() * 16.0;
+        double renderDistanceSq = renderDistance * renderDistance;
+        double detailDistanceSq = (double) settings.detailDistance * settings.detailDistance;
 
         matrices.push();
 
-        // Translate to camera position
-        matrices.translate(-camera.x, -camera.y, -camera.z);
+        // Geometry is relative to its origin; translate from the camera to there
+        matrices.translate(geometry.getOriginX() - camera.x, geometry.getOriginY() - camera.y, geometry.getOriginZ() - camera.z);
+        Matrix4f modelView = matrices.peek().getPositionMatrix();
+        Matrix4f projection = RenderSystem.getProjectionMatrix();
+        ShaderProgram shader = GameRenderer.getPositionColorProgram();
 
         RenderSystem.enableBlend();
         RenderSystem.defaultBlendFunc();
         RenderSystem.disableDepthTest();
-        RenderSystem.setShader(GameRenderer::getPositionColorProgram);
-
-        Tessellator tessellator = Tessellator.getInstance();
-        BufferBuilder buffer = tessellator.begin(VertexFormat.DrawMode.DEBUG_LINES, VertexFormats.POSITION_COLOR);
-
-        // Draw path lines
-        drawPathLines(buffer, matrices, path.path);
-
-        // Draw node highlights
-        drawNodeHighlights(buffer, matrices, path.path);
 
-        BufferRenderer.drawWithGlobalProgram(buffer.end());
+        List<PathGeometry.Chunk> chunks = geometry.getChunks();
+        for (int i = 0; i < chunks.size(); i++) {
+            PathGeometry.Chunk chunk = chunks.get(i);
+            double distanceSq = chunk.distanceSq(camera.x, camera.y, camera.z);
+            if (distanceSq > renderDistanceSq || (frustum != null && !frustum.isVisible(chunkBounds[i]))) {
+                continue;
+            }
+
+            boolean near = distanceSq <= detailDistanceSq;
+            PathGeometry.Lod lod = near ? chunk.getFull() : chunk.getSimplified();
+            VertexBuffer[] buffers = near ? fullBuffers : simplifiedBuffers;
+            if (buffers[i] == null) {
+                buffers[i] = upload(lod);
+            }
+
+            buffers[i].bind();
+            buffers[i].draw(modelView, projection, shader);
+            lastFrameVertices += lod.getVertexCount();
+        }
+        VertexBuffer.unbind();
 
         RenderSystem.enableDepthTest();
         RenderSystem.disableBlend();
@@ -58,76 +102,56 @@ public class PathRenderer {
         matrices.pop();
     }
 
-    private static void drawPathLines(BufferBuilder buffer, MatrixStack matrices, List<PathNode> path) {
-        Matrix4f matrix = matrices.peek().getPositionMatrix();
-
-        Color color = new Color(ConfigManager.getConfig().render.pathLineColor);
-        float r = color.getRed() / 255f;
-        float g = color.getGreen() / 255f;
-        float b = color.getBlue() / 255f;
-        float a = 0.8f;
-
-        for (int i = 0; i < path.size() - 1; i++) {
-            PathNode current = path.get(i);
-            PathNode next = path.get(i + 1);
-
-            // Draw line from current to next
-            buffer.vertex(matrix, current.x + 0.5f, current.y + 0.5f, current.z + 0.5f).color(r, g, b, a);
-            buffer.vertex(matrix, next.x + 0.5f, next.y + 0.5f, next.z + 0.5f).color(r, g, b, a);
+    private static void reset(PathGeometry geometry) {
+        closeBuffers();
+        List<PathGeometry.Chunk> chunks = geometry.getChunks();
+        chunkBounds = new Box[chunks.size()];
+        for (int i = 0; i < chunks.size(); i++) {
+            PathGeometry.Chunk chunk = chunks.get(i);
+            chunkBounds[i] = new Box(chunk.getMinX(), chunk.getMinY(), chunk.getMinZ(), chunk.getMaxX(), chunk.getMaxY(), chunk.getMaxZ());
         }
+        fullBuffers = new VertexBuffer[chunks.size()];
+        simplifiedBuffers = new VertexBuffer[chunks.size()];
+        uploadedVersion = geometryBuilder.getVersion();
     }
 
-    private static void drawNodeHighlights(BufferBuilder buffer, MatrixStack matrices, List<PathNode> path) {
-        Matrix4f matrix = matrices.peek().getPositionMatrix();
-
-        int interval = ConfigManager.getConfig().render.nodeHighlightInterval;
-        Color color = new Color(ConfigManager.getConfig().render.nodeHighlightColor);
-        float r = color.getRed() / 255f;
-        float g = color.getGreen() / 255f;
-        float b = color.getBlue() / 255f;
-        float a = ConfigManager.getConfig().render.nodeAlpha;
-
-        for (int i = 0; i < path.size(); i += interval) {
-            PathNode node = path.get(i);
-            drawFilledBox(buffer, matrix, node.x, node.y, node.z, r, g, b, a);
+    private static VertexBuffer upload(PathGeometry.Lod lod) {
+        BufferBuilder buffer = Tessellator.getInstance().begin(VertexFormat.DrawMode.DEBUG_LINES, VertexFormats.POSITION_COLOR);
+        for (int i = 0; i < lod.getVertexCount(); i++) {
+            buffer.vertex(lod.getX(i), lod.getY(i), lod.getZ(i)).color(lod.getColor(i));
         }
 
-        // Always highlight the last node
-        if (!path.isEmpty()) {
-            PathNode lastNode = path.get(path.size() - 1);
-            drawFilledBox(buffer, matrix, lastNode.x, lastNode.y, lastNode.z, r, g, b, a);
-        }
+        VertexBuffer vertexBuffer = new VertexBuffer(VertexBuffer.Usage.STATIC);
+        vertexBuffer.bind();
+        vertexBuffer.upload(buffer.end());
+        VertexBuffer.unbind();
+        return vertexBuffer;
     }
 
-    private static void drawFilledBox(BufferBuilder buffer, Matrix4f matrix, int x, int y, int z, float r, float g, float b, float a) {
-        // Draw a filled 1x1x1 box at the node position (ground level)
-        float x1 = x;
-        float y1 = y;
-        float z1 = z;
-        float x2 = x + 1;
-        float y2 = y + 1;
-        float z2 = z + 1;
-
-        // Bottom face
-        drawQuad(buffer, matrix, x1, y1, z1, x2, y1, z2, r, g, b, a);
-        // Top face
-        drawQuad(buffer, matrix, x1, y2, z1, x2, y2, z2, r, g, b, a);
-        // North face
-        drawQuad(buffer, matrix, x1, y1, z1, x2, y2, z1, r, g, b, a);
-        // South face
-        drawQuad(buffer, matrix, x1, y1, z2, x2, y2, z2, r, g, b, a);
-        // West face
-        drawQuad(buffer, matrix, x1, y1, z1, x1, y2, z2, r, g, b, a);
-        // East face
-        drawQuad(buffer, matrix, x2, y1, z1, x2, y2, z2, r, g, b, a);
+    private static void closeBuffers() {
+        for (VertexBuffer[] buffers : new VertexBuffer[][] {fullBuffers, simplifiedBuffers}) {
+            for (int i = 0; i < buffers.length; i++) {
+                if (buffers[i] != null) {
+                    buffers[i].close();
+                    buffers[i] = null;
+                }
+            }
+        }
     }
 
-    private static void drawQuad(BufferBuilder buffer, Matrix4f matrix, float x1, float y1, float z1, float x2, float y2, float z2, float r, float g, float b, float a) {
-        // Draw 2 lines forming an X across the quad for visibility
-        buffer.vertex(matrix, x1, y1, z1).color(r, g, b, a);
-        buffer.vertex(matrix, x2, y2, z2).color(r, g, b, a);
+    /**
+     * @return vertices drawn in the last frame
+     */
+    public static int getLastFrameVertices() {
+        return lastFrameVertices;
+    }
 
-        buffer.vertex(matrix, x1, y2, z1).color(r, g, b, a);
-        buffer.vertex(matrix, x2, y1, z2).color(r, g, b, a);
+    /**
+     * Release the GPU buffers (on disconnect); they are recreated with the next path.
+     */
+    public static void close() {
+        closeBuffers();
+        geometryBuilder.clear();
+        uploadedVersion = -1;
     }
 }
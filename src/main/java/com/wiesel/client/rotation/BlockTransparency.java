@@ -0,0 +1,181 @@
+package com.wiesel.client.rotation;
+
+import com.google.gson.Gson;
+import com.wiesel.client.WieselClient;
+import com.wiesel.client.pathfinder.engine.MapData;
+import net.fabricmc.fabric.api.event.lifecycle.v1.CommonLifecycleEvents;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.registry.Registries;
+
+import java.io.File;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Which block states line of sight passes through, as a bit table indexed by raw state id.
+ *
+ * The table is built from the block registry once and rebuilt whenever registries reload (on
+ * join, after registry sync) or a state id past its end shows up. A map can override single
+ * blocks with maps/{name}/transparency.json:
+ * <pre>{"transparent": ["minecraft:oak_door"], "opaque": ["minecraft:tall_grass"]}</pre>
+ */
+public final class BlockTransparency {
+    public static final String OVERRIDES_FILE = MapData.TRANSPARENCY_FILE; // Left out of the map's node files
+
+    // Matched against the lowercase translation key when the table is built
+    private static final String[] TRANSPARENT_KEYWORDS = {
+        "air", "glass", "water", "lava", "leaves", "fence", "bars", "torch", "lantern", "flower",
+        "grass", "fern", "vine", "sapling", "carpet", "sign", "banner", "pressure", "button",
+        "lever", "rail"
+    };
+
+    private static final Gson GSON = new Gson();
+
+    private static volatile Table table = new Table(new long[0], 0);
+    private static volatile Overrides overrides = Overrides.NONE;
+
+    private BlockTransparency() {
+    }
+
+    public static void register() {
+        CommonLifecycleEvents.TAGS_LOADED.register((registries, client) -> rebuild());
+    }
+
+    /**
+     * @return true if line of sight passes through this state
+     */
+    public static boolean isTransparent(BlockState state) {
+        int id = Block.getRawIdFromState(state);
+        Table current = table;
+        if (id < 0) {
+            return false;
+        }
+        if (id >= current.size) {
+            current = rebuild();
+            if (id >= current.size) {
+                return false;
+            }
+        }
+        return (current.bits[id >>> 6] & (1L << id)) != 0;
+    }
+
+    /**
+     * Rebuild the table from the current registry and map overrides.
+     */
+    private static synchronized Table rebuild() {
+        long start = System.nanoTime();
+        Overrides activeOverrides = overrides;
+        int size = Block.STATE_IDS.size();
+        long[] bits = new long[(size + 63) >>> 6];
+        Map<Block, Boolean> perBlock = new IdentityHashMap<>();
+        int transparent = 0;
+
+        for (int id = 0; id < size; id++) {
+            BlockState state = Block.getStateFromRawId(id);
+            if (state == null) {
+                continue;
+            }
+            Block block = state.getBlock();
+            Boolean value = perBlock.get(block);
+            if (value == null) {
+                value = classify(block, activeOverrides);
+                perBlock.put(block, value);
+            }
+            if (value) {
+                bits[id >>> 6] |= 1L << id;
+                transparent++;
+            }
+        }
+
+        Table built = new Table(bits, size);
+        table = built;
+        WieselClient.LOGGER.debug("Built block transparency table: {}/{} states transparent in {}us",
+            transparent, size, (System.nanoTime() - start) / 1000);
+        return built;
+    }
+
+    private static boolean classify(Block block, Overrides activeOverrides) {
+        if (!activeOverrides.isEmpty()) {
+            String id = String.valueOf(Registries.BLOCK.getId(block));
+            if (activeOverrides.transparent.contains(id)) {
+                return true;
+            }
+            if (activeOverrides.opaque.contains(id)) {
+                return false;
+            }
+        }
+
+        String name = block.getTranslationKey().toLowerCase(Locale.ROOT);
+        for (String keyword : TRANSPARENT_KEYWORDS) {
+            if (name.contains(keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Apply the overrides of a map directory (or clear them if it has none) and rebuild.
+     */
+    public static void loadMapOverrides(File mapDir) {
+        Overrides loaded = Overrides.NONE;
+        File file = new File(mapDir, OVERRIDES_FILE);
+        if (file.isFile()) {
+            try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                OverridesFile parsed = GSON.fromJson(reader, OverridesFile.class);
+                if (parsed != null) {
+                    loaded = new Overrides(parsed.transparent, parsed.opaque);
+                    WieselClient.LOGGER.info("Loaded {} transparency overrides for map '{}'",
+                        loaded.transparent.size() + loaded.opaque.size(), mapDir.getName());
+                }
+            } catch (Exception e) {
+                WieselClient.LOGGER.warn("Ignoring unreadable transparency overrides {}", file, e);
+            }
+        }
+
+        if (loaded.isEmpty() && overrides.isEmpty()) {
+            return;
+        }
+        overrides = loaded;
+        rebuild();
+    }
+
+    private static final class Table {
+        private final long[] bits;
+        private final int size;
+
+        private Table(long[] bits, int size) {
+            this.bits = bits;
+            this.size = size;
+        }
+    }
+
+    private static final class Overrides {
+        static final Overrides NONE = new Overrides(null, null);
+
+        final Set<String> transparent;
+        final Set<String> opaque;
+
+        Overrides(List<String> transparent, List<String> opaque) {
+            this.transparent = transparent != null ? new HashSet<>(transparent) : Set.of();
+            this.opaque = opaque != null ? new HashSet<>(opaque) : Set.of();
+        }
+
+        boolean isEmpty() {
+            return transparent.isEmpty() && opaque.isEmpty();
+        }
+    }
+
+    private static class OverridesFile {
+        List<String> transparent;
+        List<String> opaque;
+    }
+}
@@ -0,0 +1,124 @@
+package com.wiesel.client.rotation;
+
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import java.util.Arrays;
+
+/**
+ * Line-of-sight checks between the player's eye and path nodes.
+ *
+ * The segment is walked voxel by voxel (Amanatides & Woo), so every block it passes through is
+ * checked exactly once and thin corners can't be skipped. Results are memoized per (eye block,
+ * target block) for a few ticks: the lookahead asks the same questions every tick while the
+ * player crosses a block.
+ */
+class LineOfSight {
+    private static final int MEMO_SIZE = 64;          // Direct-mapped, power of two
+    private static final long MEMO_MAX_AGE_TICKS = 10; // Re-check so broken/placed blocks are noticed
+
+    private final BlockPos.Mutable pos = new BlockPos.Mutable();
+
+    private final long[] memoEye = new long[MEMO_SIZE];
+    private final long[] memoTarget = new long[MEMO_SIZE];
+    private final long[] memoTime = new long[MEMO_SIZE];
+    private final boolean[] memoVisible = new boolean[MEMO_SIZE];
+    private final boolean[] memoUsed = new boolean[MEMO_SIZE];
+    private World memoWorld = null;
+
+    /**
+     * @return true if no opaque block lies strictly between the two points' blocks
+     */
+    boolean check(World world, double x1, double y1, double z1, double x2, double y2, double z2) {
+        if (world == null) return true;
+
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double dz = z2 - z1;
+        if (dx * dx + dy * dy + dz * dz < 1) return true;
+
+        if (world != memoWorld) {
+            clear();
+            memoWorld = world;
+        }
+
+        long eye = BlockPos.asLong((int) Math.floor(x1), (int) Math.floor(y1), (int) Math.floor(z1));
+        long target = BlockPos.asLong((int) Math.floor(x2), (int) Math.floor(y2), (int) Math.floor(z2));
+        long now = world.getTime();
+        int slot = slot(eye, target);
+        if (memoUsed[slot] && memoEye[slot] == eye && memoTarget[slot] == target
+                && now - memoTime[slot] < MEMO_MAX_AGE_TICKS && now >= memoTime[slot]) {
+            return memoVisible[slot];
+        }
+
+        boolean visible = traverse(world, x1, y1, z1, x2, y2, z2);
+        memoUsed[slot] = true;
+        memoEye[slot] = eye;
+        memoTarget[slot] = target;
+        memoTime[slot] = now;
+        memoVisible[slot] = visible;
+        return visible;
+    }
+
+    void clear() {
+        Arrays.fill(memoUsed, false);
+        memoWorld = null;
+    }
+
+    private boolean traverse(World world, double x1, double y1, double z1, double x2, double y2, double z2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double dz = z2 - z1;
+
+        int x = (int) Math.floor(x1);
+        int y = (int) Math.floor(y1);
+        int z = (int) Math.floor(z1);
+        int endX = (int) Math.floor(x2);
+        int endY = (int) Math.floor(y2);
+        int endZ = (int) Math.floor(z2);
+
+        int stepX = dx > 0 ? 1 : dx < 0 ? -1 : 0;
+        int stepY = dy > 0 ? 1 : dy < 0 ? -1 : 0;
+        int stepZ = dz > 0 ? 1 : dz < 0 ? -1 : 0;
+
+        // Parameter t runs from 0 at the start to 1 at the end of the segment
+        double tDeltaX = stepX != 0 ? stepX / dx : Double.POSITIVE_INFINITY;
+        double tDeltaY = stepY != 0 ? stepY / dy : Double.POSITIVE_INFINITY;
+        double tDeltaZ = stepZ != 0 ? stepZ / dz : Double.POSITIVE_INFINITY;
+        double tMaxX = stepX > 0 ? (x + 1 - x1) / dx : stepX < 0 ? (x - x1) / dx : Double.POSITIVE_INFINITY;
+        double tMaxY = stepY > 0 ? (y + 1 - y1) / dy : stepY < 0 ? (y - y1) / dy : Double.POSITIVE_INFINITY;
+        double tMaxZ = stepZ > 0 ? (z + 1 - z1) / dz : stepZ < 0 ? (z - z1) / dz : Double.POSITIVE_INFINITY;
+
+        int remaining = Math.abs(endX - x) + Math.abs(endY - y) + Math.abs(endZ - z);
+        while (remaining-- > 0) {
+            if (tMaxX < tMaxY && tMaxX < tMaxZ) {
+                if (tMaxX > 1) break;
+                x += stepX;
+                tMaxX += tDeltaX;
+            } else if (tMaxY < tMaxZ) {
+                if (tMaxY > 1) break;
+                y += stepY;
+                tMaxY += tDeltaY;
+            } else {
+                if (tMaxZ > 1) break;
+                z += stepZ;
+                tMaxZ += tDeltaZ;
+            }
+
+            if (x == endX && y == endY && z == endZ) {
+                break; // The target's own block doesn't block the view of it
+            }
+            if (!BlockTransparency.isTransparent(world.getBlockState(pos.set(x, y, z)))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int slot(long eye, long target) {
+        long h = eye * 0x9E3779B97F4A7C15L ^ target;
+        h ^= h >>> 29;
+        return (int) h & (MEMO_SIZE - 1);
+    }
+}
@@ -0,0 +1,163 @@
+package com.wiesel.client.rotation;
+
+import com.wiesel.client.pathfinder.PathBuffer;
+
+import java.util.Arrays;
+
+/**
+ * Per-node facts about a path that the rotation needs every frame, computed once when the path
+ * is set and extended when nodes are appended.
+ *
+ * - Corner flags: the direction changes by more than 60 degrees at the node.
+ * - Cumulative horizontal arc length, so "how far along the path" is a subtraction.
+ * - Prefix sums over the per-step elevation changes, so any window of steps is summarized in O(1).
+ */
+public class PathAnalysis {
+    static final double STEP_THRESHOLD = 0.3;  // Smaller elevation changes are ignored
+    static final double STEEP_THRESHOLD = 0.9; // A single step this high counts as significant
+
+    private int size = 0;
+    private boolean[] corner = new boolean[0];
+    private double[] arcLength = new double[0];
+
+    // Prefix arrays over steps: entry k covers the steps into nodes 1 .. k-1
+    private int[] upSteps = new int[1];
+    private int[] downSteps = new int[1];
+    private int[] steepUpSteps = new int[1];
+    private int[] steepDownSteps = new int[1];
+    private double[] significantDy = new double[1];
+
+    /**
+     * Analyse a whole path, discarding previous results.
+     */
+    public void analyse(PathBuffer path) {
+        size = 0;
+        extend(path, 0);
+    }
+
+    /**
+     * Update the analysis after nodes were appended to the path.
+     * @param firstNewIndex index of the first appended node
+     */
+    public void extend(PathBuffer path, int firstNewIndex) {
+        int n = path.size();
+        int from = Math.max(0, Math.min(firstNewIndex, size));
+        ensureCapacity(n);
+
+        for (int i = from; i < n; i++) {
+            if (i == 0) {
+                arcLength[0] = 0;
+                upSteps[1] = downSteps[1] = steepUpSteps[1] = steepDownSteps[1] = 0;
+                significantDy[1] = 0;
+                continue;
+            }
+
+            double dx = path.getX(i) - path.getX(i - 1);
+            double dz = path.getZ(i) - path.getZ(i - 1);
+            double dy = path.getY(i) - path.getY(i - 1);
+            arcLength[i] = arcLength[i - 1] + Math.sqrt(dx * dx + dz * dz);
+
+            boolean up = dy > STEP_THRESHOLD;
+            boolean down = dy < -STEP_THRESHOLD;
+            upSteps[i + 1] = upSteps[i] + (up ? 1 : 0);
+            downSteps[i + 1] = downSteps[i] + (down ? 1 : 0);
+            steepUpSteps[i + 1] = steepUpSteps[i] + (dy >= STEEP_THRESHOLD ? 1 : 0);
+            steepDownSteps[i + 1] = steepDownSteps[i] + (dy <= -STEEP_THRESHOLD ? 1 : 0);
+            significantDy[i + 1] = significantDy[i] + (up || down ? dy : 0);
+        }
+
+        // The last node has no outgoing segment yet; the one before it may have just gained one
+        if (n > 0) {
+            corner[n - 1] = false;
+        }
+        for (int i = Math.max(1, from - 1); i < n - 1; i++) {
+            corner[i] = computeCorner(path, i);
+        }
+        size = n;
+    }
+
+    private static boolean computeCorner(PathBuffer path, int i) {
+        double dx1 = path.getX(i) - path.getX(i - 1);
+        double dz1 = path.getZ(i) - path.getZ(i - 1);
+        double dx2 = path.getX(i + 1) - path.getX(i);
+        double dz2 = path.getZ(i + 1) - path.getZ(i);
+
+        double len1 = Math.sqrt(dx1 * dx1 + dz1 * dz1);
+        double len2 = Math.sqrt(dx2 * dx2 + dz2 * dz2);
+        if (len1 < 0.01 || len2 < 0.01) return false;
+
+        // cos of the angle between the segments; below 0.5 means sharper than 60 degrees
+        return (dx1 * dx2 + dz1 * dz2) / (len1 * len2) < 0.5;
+    }
+
+    private void ensureCapacity(int n) {
+        if (corner.length >= n) {
+            return;
+        }
+        int capacity = Math.max(n, corner.length * 2);
+        corner = Arrays.copyOf(corner, capacity);
+        arcLength = Arrays.copyOf(arcLength, capacity);
+        upSteps = Arrays.copyOf(upSteps, capacity + 1);
+        downSteps = Arrays.copyOf(downSteps, capacity + 1);
+        steepUpSteps = Arrays.copyOf(steepUpSteps, capacity + 1);
+        steepDownSteps = Arrays.copyOf(steepDownSteps, capacity + 1);
+        significantDy = Arrays.copyOf(significantDy, capacity + 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isCorner(int index) {
+        return corner[index];
+    }
+
+    /**
+     * @return horizontal distance along the path from the first node to this one
+     */
+    public double getArcLength(int index) {
+        return arcLength[index];
+    }
+
+    /**
+     * @return first node index in [from, size) whose arc length is at least the given value, or size
+     */
+    public int indexAtArcLength(int from, double length) {
+        int lo = from;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (arcLength[mid] < length) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Window queries over the steps into nodes from .. to (inclusive)
+
+    public int upSteps(int from, int to) {
+        return upSteps[to + 1] - upSteps[from];
+    }
+
+    public int downSteps(int from, int to) {
+        return downSteps[to + 1] - downSteps[from];
+    }
+
+    public boolean hasSteepUp(int from, int to) {
+        return steepUpSteps[to + 1] - steepUpSteps[from] > 0;
+    }
+
+    public boolean hasSteepDown(int from, int to) {
+        return steepDownSteps[to + 1] - steepDownSteps[from] > 0;
+    }
+
+    /**
+     * @return sum of the elevation changes that exceed {@link #STEP_THRESHOLD}
+     */
+    public double significantDy(int from, int to) {
+        return significantDy[to + 1] - significantDy[from];
+    }
+}
@@ -1,8 +1,9 @@
 package com.wiesel.client.rotation;
 
 import com.wiesel.client.WieselClient;
-import com.wiesel.client.pathfinder.PathNode;
-import net.minecraft.block.BlockState;
+import com.wiesel.client.config.ConfigManager;
+import com.wiesel.client.config.WieselConfig;
+import com.wiesel.client.pathfinder.PathBuffer;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.network.ClientPlayerEntity;
 import net.minecraft.util.math.BlockPos;
@@ -10,8 +11,6 @@ import net.minecraft.util.math.MathHelper;
 import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.World;
 
-import java.util.List;
-
 /**
  * Human-like rotation system with predictive pitch and lookahead.
  * Ported from ChatTriggers HumanRotation.js
@@ -28,25 +27,31 @@ public class RotationManager {
     private float yawSpeed = 7.0f;
     private float pitchSpeed = 4.5f;
 
-    // Etherwarp rotation defaults (will be loaded from config)
-    private static final float DEFAULT_ETHERWARP_SPEED = 8.5f;
+    // Etherwarp rotation settings (loaded from config)
+    private volatile WieselConfig.EtherwarpSettings etherwarp = new WieselConfig.EtherwarpSettings();
     private static final float ETHERWARP_COMPLETION_THRESHOLD = 0.35f; // Within 0.35 degrees for maximum precision
 
     // Corner handling (loaded from config)
     private float cornerBoost = 1.5f;
     private static final float CORNER_THRESHOLD = 25.0f;
 
+    public RotationManager() {
+        ConfigManager.subscribe(this::applyConfig);
+    }
+
     /**
-     * Load rotation settings from config.
+     * Take the rotation settings from a newly published config.
      */
-    private void loadConfig() {
-        yawSpeed = WieselClient.getInstance().getConfigManager().getFloat("rotation.yawSpeed", 7.0f);
-        pitchSpeed = WieselClient.getInstance().getConfigManager().getFloat("rotation.pitchSpeed", 4.5f);
-        lookaheadNodes = (int) WieselClient.getInstance().getConfigManager().getFloat("rotation.lookahead", 8f);
-        lookaheadMinDist = WieselClient.getInstance().getConfigManager().getFloat("rotation.lookaheadMinDist", 4.0f);
-        lookaheadMaxDist = WieselClient.getInstance().getConfigManager().getFloat("rotation.lookaheadMaxDist", 15.0f);
-        enableLOS = WieselClient.getInstance().getConfigManager().getBoolean("rotation.enableLOS", true);
-        cornerBoost = WieselClient.getInstance().getConfigManager().getFloat("rotation.cornerBoost", 1.5f);
+    private void applyConfig(WieselConfig config) {
+        WieselConfig.RotationSettings rotation = config.rotation;
+        yawSpeed = rotation.yawSpeed;
+        pitchSpeed = rotation.pitchSpeed;
+        lookaheadNodes = (int) rotation.lookahead;
+        lookaheadMinDist = rotation.lookaheadMinDist;
+        lookaheadMaxDist = rotation.lookaheadMaxDist;
+        enableLOS = rotation.enableLOS;
+        cornerBoost = rotation.cornerBoost;
+        etherwarp = config.etherwarp;
     }
 
     // Predictive pitch
@@ -55,8 +60,11 @@ public class RotationManager {
     private static final float DESCEND_PITCH = 20.0f;  // Look down when descending
     private static final int PREDICTION_NODES = 6;
 
+    private final LineOfSight lineOfSight = new LineOfSight();
+    private final PathAnalysis analysis = new PathAnalysis();
+
     // State
-    private List<PathNode> path;
+    private PathBuffer path;
     private int currentNodeIndex = 0;
     private boolean isActive = false;
 
@@ -104,16 +112,14 @@ public class RotationManager {
     private static final double STANDING_EYE_HEIGHT = 1.62;
     private static final double SNEAKING_EYE_HEIGHT = 1.32; // 1.5 (sneak height) - 0.18
 
-    public void setPath(List<PathNode> newPath) {
+    public void setPath(PathBuffer newPath) {
         this.path = newPath;
+        analysis.analyse(newPath);
         this.currentNodeIndex = 0;
         this.isActive = true;
         this.targetMode = false;
         this.targetPoint = null;
 
-        // Load config values
-        loadConfig();
-
         // Initialize rotations from player
         MinecraftClient client = MinecraftClient.getInstance();
         if (client.player != null) {
@@ -160,12 +166,10 @@ public class RotationManager {
         this.targetPitch = MathHelper.clamp(this.targetPitch, -90, 90);
 
         // Load config values
-        float configOvershootAmount = WieselClient.getInstance().getConfigManager()
-            .getFloat("etherwarp.overshootAmount", 1.5f);
-        boolean enableOvershoot = WieselClient.getInstance().getConfigManager()
-            .getBoolean("etherwarp.enableOvershoot", true);
-        float speedVariation = WieselClient.getInstance().getConfigManager()
-            .getFloat("etherwarp.speedVariation", 0.3f);
+        WieselConfig.EtherwarpSettings settings = etherwarp;
+        float configOvershootAmount = settings.overshootAmount;
+        boolean enableOvershoot = settings.enableOvershoot;
+        float speedVariation = settings.speedVariation;
 
         // Human-like overshoot behavior
         if (enableOvershoot) {
@@ -329,6 +333,32 @@ public class RotationManager {
         }
     }
 
+    /**
+     * Swap in a repaired version of the current path without resetting the rotation state.
+     * @param index index of the node currently being walked to in the new path
+     */
+    public void updatePath(PathBuffer newPath, int index) {
+        if (!isActive) {
+            return;
+        }
+        this.path = newPath;
+        this.currentNodeIndex = index;
+        analysis.analyse(newPath);
+    }
+
+    /**
+     * Nodes were appended to the path being walked (streamed segments). The current node index
+     * and rotation state are kept.
+     * @param firstNewIndex index of the first appended node
+     */
+    public void appendPath(PathBuffer extendedPath, int firstNewIndex) {
+        if (!isActive) {
+            return;
+        }
+        this.path = extendedPath;
+        analysis.extend(extendedPath, firstNewIndex);
+    }
+
     public void setCurrentNodeIndex(int index) {
         this.currentNodeIndex = index;
     }
@@ -453,8 +483,7 @@ public class RotationManager {
         targetPitch = MathHelper.clamp(targetPitch, -90, 90);
 
         // Load config speed
-        float configSpeed = WieselClient.getInstance().getConfigManager()
-            .getFloat("etherwarp.rotationSpeed", DEFAULT_ETHERWARP_SPEED);
+        float configSpeed = etherwarp.rotationSpeed;
 
         // Determine actual target with overshoot behavior
         float effectiveTargetYaw = targetYaw;
@@ -596,15 +625,24 @@ public class RotationManager {
         int bestNodeIndex = currentNodeIndex;
 
         int maxIdx = Math.min(currentNodeIndex + lookaheadNodes, path.size() - 1);
+        if (maxIdx < currentNodeIndex) return null;
+
+        // Nodes closer along the path than (min distance - distance to the current node) are
+        // certainly within the min distance, so start past them
+        double cdx = path.getX(currentNodeIndex) + 0.5 - px;
+        double cdz = path.getZ(currentNodeIndex) + 0.5 - pz;
+        double currentDist = Math.sqrt(cdx * cdx + cdz * cdz);
+        int first = analysis.indexAtArcLength(currentNodeIndex,
+            analysis.getArcLength(currentNodeIndex) + lookaheadMinDist - currentDist);
+        first = Math.max(currentNodeIndex, Math.min(first, maxIdx));
 
         // Find farthest visible node
-        for (int i = currentNodeIndex; i <= maxIdx; i++) {
-            PathNode node = path.get(i);
-            double nx = node.x + 0.5;
-            double ny = node.y + 1.0;
-            double nz = node.z + 0.5;
+        for (int i = first; i <= maxIdx; i++) {
+            double nx = path.getX(i) + 0.5;
+            double ny = path.getY(i) + 1.0;
+            double nz = path.getZ(i) + 0.5;
 
-            double dist = Math.sqrt(Math.pow(nx - px, 2) + Math.pow(nz - pz, 2));
+            double dist = Math.sqrt((nx - px) * (nx - px) + (nz - pz) * (nz - pz));
 
             // Skip if too close (unless it's the last node)
             if (dist < lookaheadMinDist && i < maxIdx) {
@@ -617,12 +655,12 @@ public class RotationManager {
             }
 
             // Check line of sight if enabled
-            boolean visible = !enableLOS || hasLineOfSight(px, eyeY, pz, nx, ny, nz, world);
+            boolean visible = !enableLOS || lineOfSight.check(world, px, eyeY, pz, nx, ny, nz);
 
             if (visible) {
                 // Check if this is a corner (sharp direction change)
                 if (i > currentNodeIndex && i < path.size() - 1) {
-                    if (isCorner(i)) {
+                    if (analysis.isCorner(i)) {
                         // Corner detected - don't look past it, target the corner
                         bestTarget = new Vec3d(nx, ny, nz);
                         bestNodeIndex = i;
@@ -641,112 +679,16 @@ public class RotationManager {
 
         // Fallback to current node if nothing found
         if (bestTarget == null && currentNodeIndex < path.size()) {
-            PathNode node = path.get(currentNodeIndex);
             bestTarget = new Vec3d(
-                node.x + 0.5,
-                node.y + 1.0,
-                node.z + 0.5
+                path.getX(currentNodeIndex) + 0.5,
+                path.getY(currentNodeIndex) + 1.0,
+                path.getZ(currentNodeIndex) + 0.5
             );
         }
 
         return bestTarget;
     }
 
-    /**
-     * Check if a node is a corner (sharp direction change).
-     * This prevents looking past corners into walls.
-     */
-    private boolean isCorner(int nodeIndex) {
-        if (nodeIndex < 1 || nodeIndex >= path.size() - 1) return false;
-
-        PathNode prev = path.get(nodeIndex - 1);
-        PathNode curr = path.get(nodeIndex);
-        PathNode next = path.get(nodeIndex + 1);
-
-        // Calculate direction vectors
-        double dx1 = curr.x - prev.x;
-        double dz1 = curr.z - prev.z;
-        double dx2 = next.x - curr.x;
-        double dz2 = next.z - curr.z;
-
-        // Normalize vectors
-        double len1 = Math.sqrt(dx1 * dx1 + dz1 * dz1);
-        double len2 = Math.sqrt(dx2 * dx2 + dz2 * dz2);
-
-        if (len1 < 0.01 || len2 < 0.01) return false;
-
-        dx1 /= len1;
-        dz1 /= len1;
-        dx2 /= len2;
-        dz2 /= len2;
-
-        // Calculate dot product (cos of angle between vectors)
-        double dotProduct = dx1 * dx2 + dz1 * dz2;
-
-        // If dot product < 0.5, angle > 60 degrees = sharp corner
-        return dotProduct < 0.5;
-    }
-
-    /**
-     * Check line of sight between two points.
-     */
-    private boolean hasLineOfSight(double x1, double y1, double z1, double x2, double y2, double z2, World world) {
-        if (world == null) return true;
-
-        double dx = x2 - x1;
-        double dy = y2 - y1;
-        double dz = z2 - z1;
-        double dist = Math.sqrt(dx * dx + dy * dy + dz * dz);
-
-        if (dist < 1) return true;
-
-        int steps = (int) Math.ceil(dist * 2);
-
-        for (int i = 1; i < steps; i++) {
-            double t = (double) i / steps;
-            int cx = (int) Math.floor(x1 + dx * t);
-            int cy = (int) Math.floor(y1 + dy * t);
-            int cz = (int) Math.floor(z1 + dz * t);
-
-            BlockPos pos = new BlockPos(cx, cy, cz);
-            BlockState state = world.getBlockState(pos);
-
-            if (!isTransparent(state)) {
-                return false;
-            }
-        }
-
-        return true;
-    }
-
-    /**
-     * Check if block is see-through for LOS.
-     */
-    private boolean isTransparent(BlockState state) {
-        String name = state.getBlock().getTranslationKey().toLowerCase();
-        return name.contains("air") ||
-               name.contains("glass") ||
-               name.contains("water") ||
-               name.contains("lava") ||
-               name.contains("leaves") ||
-               name.contains("fence") ||
-               name.contains("bars") ||
-               name.contains("torch") ||
-               name.contains("lantern") ||
-               name.contains("flower") ||
-               name.contains("grass") ||
-               name.contains("fern") ||
-               name.contains("vine") ||
-               name.contains("sapling") ||
-               name.contains("carpet") ||
-               name.contains("sign") ||
-               name.contains("banner") ||
-               name.contains("pressure") ||
-               name.contains("button") ||
-               name.contains("lever") ||
-               name.contains("rail");
-    }
-
     /**
      * Predict pitch based on upcoming terrain changes.
      */
@@ -758,44 +700,21 @@ public class RotationManager {
         int checkNodes = Math.min(PREDICTION_NODES, path.size() - currentNodeIndex - 1);
         if (checkNodes <= 0) return BASE_PITCH;
 
-        // Get current Y level
-        PathNode startNode = path.get(currentNodeIndex);
-        double startY = startNode.y;
-
-        // Track elevation changes
-        double totalDy = 0;
-        double maxUp = 0;
-        double maxDown = 0;
-        int upCount = 0;
-        int downCount = 0;
-
-        for (int i = 1; i <= checkNodes; i++) {
-            int idx = currentNodeIndex + i;
-            if (idx >= path.size()) break;
-
-            PathNode node = path.get(idx);
-            PathNode prevNode = path.get(idx - 1);
-            double dy = node.y - prevNode.y;
-
-            if (dy > 0.3) {
-                // Going up
-                upCount++;
-                maxUp = Math.max(maxUp, dy);
-                totalDy += dy;
-            } else if (dy < -0.3) {
-                // Going down
-                downCount++;
-                maxDown = Math.min(maxDown, dy);
-                totalDy += dy;
-            }
-        }
+        // Elevation changes of the next steps, from the prefix sums
+        int from = currentNodeIndex + 1;
+        int to = currentNodeIndex + checkNodes;
+        int upCount = analysis.upSteps(from, to);
+        int downCount = analysis.downSteps(from, to);
+        double totalDy = analysis.significantDy(from, to);
+        boolean steepUp = analysis.hasSteepUp(from, to);
+        boolean steepDown = analysis.hasSteepDown(from, to);
 
         // Determine pitch based on prediction
-        if (upCount >= 2 || maxUp >= 0.9) {
+        if (upCount >= 2 || steepUp) {
             // Significant climb ahead - look up
             float intensity = Math.min(upCount / 3.0f, 1.0f);
             return CLIMB_PITCH * intensity + BASE_PITCH * (1 - intensity);
-        } else if (downCount >= 2 || maxDown <= -0.9) {
+        } else if (downCount >= 2 || steepDown) {
             // Significant descent ahead - look down
             float intensity = Math.min(downCount / 3.0f, 1.0f);
             return DESCEND_PITCH * intensity + BASE_PITCH * (1 - intensity);
@@ -0,0 +1,22 @@
+package com.wiesel.client.util;
+
+import net.fabricmc.fabric.api.event.Event;
+import net.fabricmc.fabric.api.event.EventFactory;
+
+/**
+ * Fired on the client thread as soon as the tab list shows a different area.
+ */
+@FunctionalInterface
+public interface AreaChanged {
+    Event<AreaChanged> EVENT = EventFactory.createArrayBacked(AreaChanged.class, listeners -> (previousArea, area) -> {
+        for (AreaChanged listener : listeners) {
+            listener.onAreaChanged(previousArea, area);
+        }
+    });
+
+    /**
+     * @param previousArea the area shown before, or null
+     * @param area the area now shown (lowercase, first word), or null if none is shown anymore
+     */
+    void onAreaChanged(String previousArea, String area);
+}
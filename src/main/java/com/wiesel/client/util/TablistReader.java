@@ -1,55 +1,115 @@
 package com.wiesel.client.util;
 
+import com.wiesel.client.WieselClient;
 import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.network.ClientPlayNetworkHandler;
 import net.minecraft.client.network.PlayerListEntry;
 import net.minecraft.text.Text;
 
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
 
+/**
+ * Tracks the current area from the tab list's "Area: {name}" entry.
+ *
+ * Fed incrementally from the player list packets (see MixinClientPlayNetworkHandler): only the
+ * entries a packet touched are re-read, and {@link AreaChanged} fires as soon as the area
+ * differs. All methods run on the client thread.
+ */
 public class TablistReader {
+    private static final String AREA_PREFIX = "Area:";
+    private static final Pattern FORMATTING_CODES = Pattern.compile("§[0-9a-fk-or]");
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^a-zA-Z0-9 ]");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
 
+    // Entries currently showing an area, in update order; the last one wins
+    private static final Map<UUID, String> areaEntries = new LinkedHashMap<>();
+    private static volatile String currentArea = null;
+
+    /**
+     * @return the area shown in the tab list (lowercase, first word), or null
+     */
     public static String getCurrentArea() {
-        MinecraftClient mc = MinecraftClient.getInstance();
-        if (mc.player == null || mc.player.networkHandler == null) {
-            return null;
+        return currentArea;
+    }
+
+    /**
+     * Re-read the given entries after a player list update.
+     */
+    public static void onEntriesUpdated(ClientPlayNetworkHandler handler, Collection<UUID> profileIds) {
+        for (UUID id : profileIds) {
+            PlayerListEntry entry = handler.getPlayerListEntry(id);
+            String area = entry != null ? parseArea(entry.getDisplayName()) : null;
+
+            areaEntries.remove(id);
+            if (area != null) {
+                areaEntries.put(id, area);
+            }
         }
+        publish();
+    }
 
-        Collection<PlayerListEntry> playerList = mc.player.networkHandler.getPlayerList();
+    /**
+     * Forget entries removed from the player list.
+     */
+    public static void onEntriesRemoved(Collection<UUID> profileIds) {
+        boolean changed = false;
+        for (UUID id : profileIds) {
+            changed |= areaEntries.remove(id) != null;
+        }
+        if (changed) {
+            publish();
+        }
+    }
 
-        for (PlayerListEntry entry : playerList) {
-            Text displayName = entry.getDisplayName();
-            if (displayName == null) continue;
+    public static void reset() {
+        areaEntries.clear();
+        currentArea = null;
+    }
 
-            String text = displayName.getString();
+    private static void publish() {
+        String area = null;
+        for (String value : areaEntries.values()) {
+            area = value;
+        }
+        if (area == null ? currentArea == null : area.equals(currentArea)) {
+            return;
+        }
 
-            // Look for "Area: {name}" pattern
-            if (text.contains("Area:")) {
-                String[] parts = text.split("Area:");
-                if (parts.length > 1) {
-                    String area = parts[1].trim();
-                    // Remove any color codes or extra characters
-                    area = stripFormatting(area);
-                    return area;
-                }
-            }
+        String previous = currentArea;
+        currentArea = area;
+        WieselClient.LOGGER.debug("Tab list area changed: {} -> {}", previous, area);
+        AreaChanged.EVENT.invoker().onAreaChanged(previous, area);
+    }
+
+    private static String parseArea(Text displayName) {
+        if (displayName == null) {
+            return null;
         }
 
-        return null;
+        // Look for "Area: {name}" pattern
+        String text = displayName.getString();
+        int index = text.indexOf(AREA_PREFIX);
+        if (index < 0) {
+            return null;
+        }
+
+        String area = stripFormatting(text.substring(index + AREA_PREFIX.length()));
+        return area.isEmpty() ? null : area;
     }
 
     private static String stripFormatting(String text) {
         // Remove color codes and special characters, get first word
-        text = text.replaceAll("§[0-9a-fk-or]", ""); // Minecraft color codes
-        text = text.replaceAll("[^a-zA-Z0-9 ]", ""); // Non-alphanumeric
+        text = FORMATTING_CODES.matcher(text).replaceAll(""); // Minecraft color codes
+        text = NON_ALPHANUMERIC.matcher(text).replaceAll(""); // Non-alphanumeric
         text = text.trim();
 
         // Get first word (the area name)
-        String[] words = text.split("\\s+");
-        if (words.length > 0) {
-            return words[0].toLowerCase(); // Convert to lowercase for matching
-        }
-
-        return text.toLowerCase();
+        String[] words = WHITESPACE.split(text, 2);
+        return words[0].toLowerCase();
     }
 
     public static boolean isInWorld() {
@@ -0,0 +1,30 @@
+package com.wiesel.client.pathfinder;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class PathQueryTest {
+    @Test
+    void toBlockMatchesTheJsonFormatting() {
+        double[] coordinates = {-3.5, -2.5, -2.4999, -1.6, -0.5, -0.4, 0, 0.4, 0.5, 1.5, 2.5, 2.51, 64.0, 1e6 + 0.5};
+        for (double coordinate : coordinates) {
+            assertEquals(Integer.parseInt(String.format("%.0f", coordinate)), PathQuery.toBlock(coordinate),
+                "block of " + coordinate);
+        }
+        assertEquals(-3, PathQuery.toBlock(-2.5));
+        assertEquals(3, PathQuery.toBlock(2.5));
+    }
+
+    @Test
+    void queriesAreEqualWhenTheyResolveToTheSameBlocks() {
+        PathQuery query = new PathQuery(-2.5, 64, 10.2, 100, 64, 100);
+        PathQuery sameBlock = new PathQuery(-2.7, 64.3, 9.6, 100.4, 64, 99.5);
+        assertEquals(query, sameBlock);
+        assertEquals(query.hashCode(), sameBlock.hashCode());
+
+        // -2.5 is sent as block -3, -1.6 as block -2
+        assertNotEquals(query, new PathQuery(-1.6, 64, 10.2, 100, 64, 100));
+    }
+}
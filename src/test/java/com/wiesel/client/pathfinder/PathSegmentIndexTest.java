@@ -0,0 +1,89 @@
+package com.wiesel.client.pathfinder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PathSegmentIndexTest {
+    /**
+     * A random walk that doubles back on itself, so cells hold segments from far apart in the path.
+     */
+    private static PathBuffer randomPath(Random random, int nodes) {
+        PathBuffer path = new PathBuffer(nodes);
+        int x = 0, y = 64, z = 0;
+        for (int i = 0; i < nodes; i++) {
+            path.add(x, y, z, 2, 0, false);
+            x += random.nextInt(3) - 1;
+            z += random.nextInt(3) - 1;
+            if (random.nextInt(10) == 0) {
+                y += random.nextInt(3) - 1;
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Reference: the nearest segment by scanning every one, with the index's tie rule.
+     */
+    private static int scanNearest(PathSegmentIndex index, PathBuffer path, double x, double y, double z,
+                                   int from, int to, double radius) {
+        int nearest = -1;
+        double nearestSq = radius * radius;
+        for (int s = Math.max(1, from); s <= Math.min(path.size() - 1, to); s++) {
+            double distanceSq = index.distanceSqToSegment(x, y, z, s);
+            if (distanceSq < nearestSq || (distanceSq == nearestSq && s > nearest)) {
+                nearestSq = distanceSq;
+                nearest = s;
+            }
+        }
+        return nearest;
+    }
+
+    private static void assertMatchesScan(PathSegmentIndex index, PathBuffer path, Random random, int queries) {
+        for (int q = 0; q < queries; q++) {
+            int near = random.nextInt(path.size());
+            double x = path.getX(near) + random.nextDouble() * 10 - 5;
+            double y = path.getY(near) + random.nextDouble() * 4 - 2;
+            double z = path.getZ(near) + random.nextDouble() * 10 - 5;
+            int from = random.nextInt(path.size());
+            int to = random.nextBoolean() ? path.size() : from + random.nextInt(200);
+            double radius = 1 + random.nextDouble() * 8;
+
+            int expected = scanNearest(index, path, x, y, z, from, to, radius);
+            assertEquals(expected, index.findNearest(x, y, z, from, to, radius),
+                String.format("nearest segment to (%.2f, %.2f, %.2f) in %d..%d", x, y, z, from, to));
+        }
+    }
+
+    @Test
+    void findNearestMatchesLinearScan() {
+        Random random = new Random(3);
+        PathBuffer path = randomPath(random, 50_000);
+        PathSegmentIndex index = new PathSegmentIndex();
+        index.build(path);
+
+        assertMatchesScan(index, path, random, 2000);
+    }
+
+    @Test
+    void extendIndexesAppendedNodes() {
+        Random random = new Random(7);
+        PathBuffer full = randomPath(random, 5_000);
+        PathBuffer streamed = new PathBuffer();
+        PathSegmentIndex index = new PathSegmentIndex();
+        index.build(streamed);
+
+        // Append in segments, as streamed responses arrive
+        for (int i = 0; i < full.size(); i++) {
+            streamed.add(full, i);
+            if (i % 500 == 499) {
+                index.extend(streamed);
+            }
+        }
+        index.extend(streamed);
+
+        assertMatchesScan(index, streamed, random, 1000);
+    }
+}
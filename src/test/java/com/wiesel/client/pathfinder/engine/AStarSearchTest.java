@@ -0,0 +1,83 @@
+package com.wiesel.client.pathfinder.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AStarSearchTest {
+    private static final int SIZE = 64;
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * A SIZE x SIZE floor with random pillars and a few one-block steps.
+     */
+    private MapData createMap(long seed) throws IOException {
+        Random random = new Random(seed);
+        StringBuilder json = new StringBuilder("[");
+        for (int x = 0; x < SIZE; x++) {
+            for (int z = 0; z < SIZE; z++) {
+                if (random.nextInt(6) == 0) {
+                    continue; // Pillar
+                }
+                int y = 64 + (x / 16 + z / 16) % 2;
+                if (json.length() > 1) {
+                    json.append(',');
+                }
+                json.append(String.format("{\"x\": %d, \"y\": %d, \"z\": %d, \"top_bound\": 2.0, \"path_weight\": %.1f, \"is_liquid\": false}",
+                    x, y, z, 1.0 + random.nextInt(3)));
+            }
+        }
+        json.append(']');
+
+        File mapDir = tempDir.resolve("map" + seed).toFile();
+        mapDir.mkdirs();
+        Files.writeString(new File(mapDir, "nodes.json").toPath(), json);
+        return MapData.load("test", mapDir);
+    }
+
+    @Test
+    void searchAnyMatchesCheapestSingleGoalSearch() throws IOException {
+        MapData map = createMap(5);
+        AStarSearch search = new AStarSearch(map);
+        Random random = new Random(11);
+
+        for (int round = 0; round < 10; round++) {
+            int start = random.nextInt(map.size());
+            int[] goals = new int[50];
+            for (int i = 0; i < goals.length; i++) {
+                goals[i] = random.nextInt(map.size());
+            }
+
+            float best = Float.POSITIVE_INFINITY;
+            for (int goal : goals) {
+                if (search.search(start, goal, 1f) != null) {
+                    best = Math.min(best, search.getLastCost());
+                }
+            }
+
+            int[] path = search.searchAny(start, goals, 1f);
+            if (Float.isInfinite(best)) {
+                assertNull(path);
+                continue;
+            }
+            assertNotNull(path);
+            assertEquals(best, search.getLastCost(), 1e-3, "cost of the nearest goal");
+            assertEquals(start, path[0]);
+            int reached = path[path.length - 1];
+            assertTrue(Arrays.stream(goals).anyMatch(goal -> goal == reached), "path ends at one of the goals");
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.wiesel.client.rendering;
+
+import com.wiesel.client.config.WieselConfig;
+import com.wiesel.client.pathfinder.PathBuffer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PathGeometryBuilderTest {
+    private static final int BOX_VERTICES = 24;
+
+    private static PathBuffer straightPath(int nodes) {
+        PathBuffer path = new PathBuffer(nodes);
+        for (int x = 0; x < nodes; x++) {
+            path.add(x, 64, 0, 0, 0, false);
+        }
+        return path;
+    }
+
+    private static WieselConfig.RenderSettings settings(int lineColor, int interval, float alpha) {
+        WieselConfig.RenderSettings settings = new WieselConfig.RenderSettings();
+        settings.pathLineColor = lineColor;
+        settings.nodeHighlightInterval = interval;
+        settings.nodeAlpha = alpha;
+        return settings;
+    }
+
+    @Test
+    void unchangedPathAndSettingsReuseGeometry() {
+        PathGeometryBuilder builder = new PathGeometryBuilder();
+        PathBuffer path = straightPath(100);
+
+        PathGeometry first = builder.update(path, settings(0x00AA00, 15, 0.5f));
+        int version = builder.getVersion();
+        PathGeometry second = builder.update(path, settings(0x00AA00, 15, 0.5f));
+
+        assertSame(first, second);
+        assertEquals(version, builder.getVersion());
+    }
+
+    @Test
+    void pathAndSettingChangesRebuildGeometry() {
+        PathGeometryBuilder builder = new PathGeometryBuilder();
+        PathBuffer path = straightPath(100);
+        PathGeometry geometry = builder.update(path, settings(0x00AA00, 15, 0.5f));
+        int version = builder.getVersion();
+
+        path.add(100, 64, 0, 0, 0, false);
+        geometry = assertRebuilt(builder, geometry, path, settings(0x00AA00, 15, 0.5f), ++version);
+
+        PathBuffer copy = straightPath(101);
+        geometry = assertRebuilt(builder, geometry, copy, settings(0x00AA00, 15, 0.5f), ++version);
+        geometry = assertRebuilt(builder, geometry, copy, settings(0xFF0000, 15, 0.5f), ++version);
+        geometry = assertRebuilt(builder, geometry, copy, settings(0xFF0000, 10, 0.5f), ++version);
+        assertRebuilt(builder, geometry, copy, settings(0xFF0000, 10, 0.8f), ++version);
+    }
+
+    private static PathGeometry assertRebuilt(PathGeometryBuilder builder, PathGeometry previous, PathBuffer path,
+                                              WieselConfig.RenderSettings settings, int expectedVersion) {
+        PathGeometry geometry = builder.update(path, settings);
+        assertNotSame(previous, geometry);
+        assertEquals(expectedVersion, builder.getVersion());
+        return geometry;
+    }
+
+    @Test
+    void straightPathVertexCounts() {
+        // 200 nodes: chunks 0-64, 64-128, 128-192 and 192-199
+        PathGeometry geometry = PathGeometryBuilder.build(straightPath(200), settings(0x00AA00, 15, 0.5f));
+        assertEquals(4, geometry.getChunks().size());
+
+        // 199 segments; boxes on every 15th node (0..195) and the last
+        assertEquals(2 * 199 + 15 * BOX_VERTICES, geometry.getVertexCount());
+        PathGeometry.Chunk first = geometry.getChunks().get(0);
+        assertEquals(2 * 64 + 5 * BOX_VERTICES, first.getFull().getVertexCount());
+
+        // Far away every chunk is one line; only the destination keeps its box
+        int simplified = 0;
+        for (PathGeometry.Chunk chunk : geometry.getChunks()) {
+            simplified += chunk.getSimplified().getVertexCount();
+        }
+        assertEquals(4 * 2 + BOX_VERTICES, simplified);
+    }
+
+    @Test
+    void simplifiedLineKeepsCorners() {
+        // An L: 20 blocks along x, then 20 along z, inside one chunk
+        PathBuffer path = new PathBuffer(41);
+        for (int x = 0; x <= 20; x++) {
+            path.add(x, 64, 0, 0, 0, false);
+        }
+        for (int z = 1; z <= 20; z++) {
+            path.add(20, 64, z, 0, 0, false);
+        }
+
+        PathGeometry geometry = PathGeometryBuilder.build(path, settings(0x00AA00, 15, 0.5f));
+        assertEquals(1, geometry.getChunks().size());
+        PathGeometry.Chunk chunk = geometry.getChunks().get(0);
+
+        // Boxes on nodes 0, 15, 30 and the last
+        assertEquals(2 * 40 + 4 * BOX_VERTICES, chunk.getFull().getVertexCount());
+        // Start -> corner -> end, plus the destination box
+        PathGeometry.Lod simplified = chunk.getSimplified();
+        assertEquals(2 * 2 + BOX_VERTICES, simplified.getVertexCount());
+        assertEquals(20.5f, simplified.getX(1), 0);
+        assertEquals(0.5f, simplified.getZ(1), 0);
+    }
+}